@@ -0,0 +1,153 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SummaryEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for the {@link BookDbHelper} schema migrations. Each test builds a database
+ * with an old schema in memory and upgrades it to the current version.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperTest {
+
+    /** The books table exactly as version 1 of the database created it. */
+    private static final String SQL_CREATE_BOOKS_TABLE_V1 = "CREATE TABLE books ( "
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "name TEXT NOT NULL, "
+            + "genre INTEGER NOT NULL, "
+            + "price REAL NOT NULL, "
+            + "quantity INTEGER NOT NULL DEFAULT 0, "
+            + "supplier_name TEXT NOT NULL, "
+            + "supplier_phone_number TEXT NOT NULL);";
+
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new BookDbHelper(InstrumentationRegistry.getTargetContext());
+        mDatabase = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsExistingBooks() {
+        createVersion1Database();
+
+        mDbHelper.onUpgrade(mDatabase, 1, BookDbHelper.DATABASE_VERSION);
+
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void upgradeFromVersion1_createsSecondaryIndexes() {
+        createVersion1Database();
+
+        mDbHelper.onUpgrade(mDatabase, 1, BookDbHelper.DATABASE_VERSION);
+
+        assertIndexExists(BookDbHelper.INDEX_BOOKS_NAME);
+        assertIndexExists(BookDbHelper.INDEX_BOOKS_GENRE);
+        assertIndexExists(BookDbHelper.INDEX_BOOKS_SUPPLIER);
+        assertIndexMissing(BookDbHelper.INDEX_BOOKS_QUANTITY);
+    }
+
+    @Test
+    public void upgradeFromVersion1_genreLookupUsesIndex() {
+        createVersion1Database();
+
+        mDbHelper.onUpgrade(mDatabase, 1, BookDbHelper.DATABASE_VERSION);
+
+        String plan = explainQueryPlan("SELECT _id FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_PRODUCT_GENRE + " = 1");
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_GENRE));
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsStockAsSnapshot() {
+        createVersion1Database();
+
+        mDbHelper.onUpgrade(mDatabase, 1, BookDbHelper.DATABASE_VERSION);
+
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, StockMovementEntry.TABLE_NAME));
+        assertEquals(30, DatabaseUtils.longForQuery(mDatabase, "SELECT SUM("
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ") FROM " + BookDbHelper.VIEW_BOOKS, null));
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsPricesAndStockValueInMinorUnits() {
+        createVersion1Database();
+
+        mDbHelper.onUpgrade(mDatabase, 1, BookDbHelper.DATABASE_VERSION);
+
+        assertEquals("integer", DatabaseUtils.stringForQuery(mDatabase, "SELECT DISTINCT typeof("
+                + BookEntry.COLUMN_PRODUCT_PRICE + ") FROM " + BookEntry.TABLE_NAME, null));
+        assertEquals(599, DatabaseUtils.longForQuery(mDatabase, "SELECT MAX("
+                + BookEntry.COLUMN_PRODUCT_PRICE + ") FROM " + BookEntry.TABLE_NAME, null));
+        assertEquals(2 * 15 * 599, DatabaseUtils.longForQuery(mDatabase, "SELECT SUM("
+                + SummaryEntry.COLUMN_STOCK_VALUE + ") FROM " + SummaryEntry.TABLE_NAME, null));
+        String plan = explainQueryPlan("SELECT _id FROM " + BookEntry.TABLE_NAME
+                + " ORDER BY " + BookEntry.COLUMN_PRODUCT_PRICE);
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_PRICE));
+    }
+
+    private void createVersion1Database() {
+        mDatabase.execSQL(SQL_CREATE_BOOKS_TABLE_V1);
+        for (int i = 0; i < 2; i++) {
+            ContentValues values = new ContentValues();
+            values.put("name", "Book " + i);
+            values.put("genre", BookEntry.GENRE_FANTASY);
+            values.put("price", 5.99);
+            values.put("quantity", 15);
+            values.put("supplier_name", "Waterstones");
+            values.put("supplier_phone_number", "0208555555");
+            mDatabase.insert("books", null, values);
+        }
+        mDatabase.setVersion(1);
+    }
+
+    private void assertIndexExists(String indexName) {
+        assertEquals("Missing index " + indexName, 1, countIndexes(indexName));
+    }
+
+    private void assertIndexMissing(String indexName) {
+        assertEquals("Unexpected index " + indexName, 0, countIndexes(indexName));
+    }
+
+    private long countIndexes(String indexName) {
+        return DatabaseUtils.longForQuery(mDatabase,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{indexName});
+    }
+
+    private String explainQueryPlan(String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
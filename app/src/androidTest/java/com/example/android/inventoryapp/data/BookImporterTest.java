@@ -0,0 +1,137 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.ImportEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link BookImporter}, run against an isolated copy of the provider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookImporterTest extends ProviderTestCase2<BookProvider> {
+
+    /** Number of records in the imported file, a little over two chunks. */
+    private static final int RECORD_COUNT = 2 * BookImporter.CHUNK_SIZE + 200;
+
+    /** Every record at a multiple of this is invalid. */
+    private static final int INVALID_EVERY = 100;
+
+    private ContentResolver mResolver;
+
+    private File mFile;
+
+    public BookImporterTest() {
+        super(BookProvider.class, BookContract.CONTENT_AUTHORITY);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        setContext(InstrumentationRegistry.getTargetContext());
+        super.setUp();
+        mResolver = getMockContentResolver();
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "books.csv");
+        writeFile(mFile);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    @Test
+    public void importBooks_carriesOnFromTheLastChunkAfterAnInterruption() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Uri source = Uri.fromFile(mFile);
+
+        // Stop the first import as soon as its first chunk has been committed.
+        try {
+            new BookImporter(mResolver, context.getResources()).importBooks(source,
+                    new BookImporter.ProgressListener() {
+                        @Override
+                        public void onProgress(long recordsRead, long booksImported,
+                                               long recordsRejected) {
+                            throw new IllegalStateException("Interrupted");
+                        }
+                    });
+            fail("Import wasn't interrupted");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(BookImporter.CHUNK_SIZE - BookImporter.CHUNK_SIZE / INVALID_EVERY,
+                count(BookEntry.CONTENT_URI));
+
+        Uri importUri = new BookImporter(mResolver, context.getResources()).importBooks(source,
+                new BookImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(long recordsRead, long booksImported,
+                                           long recordsRejected) {
+                    }
+                });
+
+        // Every record was read exactly once across the two imports.
+        int rejected = RECORD_COUNT / INVALID_EVERY;
+        assertEquals(RECORD_COUNT - rejected, count(BookEntry.CONTENT_URI));
+        assertEquals(rejected, count(ImportEntry.buildRejectionsUri(
+                Long.parseLong(importUri.getLastPathSegment()))));
+        Cursor cursor = mResolver.query(importUri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ImportEntry.STATUS_FINISHED, cursor.getInt(
+                    cursor.getColumnIndexOrThrow(ImportEntry.COLUMN_STATUS)));
+            assertEquals(RECORD_COUNT, cursor.getInt(
+                    cursor.getColumnIndexOrThrow(ImportEntry.COLUMN_RECORDS_READ)));
+            assertEquals(rejected, cursor.getInt(
+                    cursor.getColumnIndexOrThrow(ImportEntry.COLUMN_RECORDS_REJECTED)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write a CSV file of books, in which every record at a multiple of {@link #INVALID_EVERY}
+     * has a negative quantity.
+     */
+    private static void writeFile(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write("name,genre,price,quantity,supplier_name,supplier_phone_number\r\n");
+            for (int i = 1; i <= RECORD_COUNT; i++) {
+                int quantity = i % INVALID_EVERY == 0 ? -1 : 15;
+                writer.write("\"Book, " + i + "\"," + BookEntry.GENRE_FANTASY + ",5.99,"
+                        + quantity + ",Waterstones,0208555555\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test showing that catalog queries keep running while {@link BookProvider} is
+ * busy with writes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderConcurrencyTest extends ProviderTestCase2<BookProvider> {
+
+    /** Number of books in the catalog while the test runs. */
+    private static final int BOOK_COUNT = 2000;
+
+    /** Number of stock adjustments in each write transaction. */
+    private static final int ADJUSTMENTS_PER_BATCH = 500;
+
+    /** How long the write workload runs for. */
+    private static final long WORKLOAD_MILLIS = 3000;
+
+    /** The longest a single catalog query may take while the writes are running. */
+    private static final long MAX_QUERY_MILLIS = 250;
+
+    private ContentResolver mResolver;
+
+    public BookProviderConcurrencyTest() {
+        super(BookProvider.class, BookContract.CONTENT_AUTHORITY);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        setContext(InstrumentationRegistry.getTargetContext());
+        super.setUp();
+        mResolver = getMockContentResolver();
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void catalogQueries_doNotStallDuringWrites() throws Exception {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BookProviderTest.createBooks(BOOK_COUNT));
+        final long firstId = queryFirstId();
+
+        // Keep the writer busy with long transactions of stock adjustments.
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running.get()) {
+                        mResolver.applyBatch(BookContract.CONTENT_AUTHORITY,
+                                createAdjustments(firstId));
+                    }
+                } catch (Throwable e) {
+                    writerError.set(e);
+                }
+            }
+        });
+        writer.start();
+
+        long longestQueryNanos = 0;
+        int queries = 0;
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WORKLOAD_MILLIS);
+        try {
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                assertEquals(BOOK_COUNT, queryCatalogCount());
+                longestQueryNanos = Math.max(longestQueryNanos, System.nanoTime() - start);
+                queries++;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+
+        assertNull(writerError.get());
+        assertTrue(queries > 0);
+        long longestQueryMillis = TimeUnit.NANOSECONDS.toMillis(longestQueryNanos);
+        assertTrue("Longest catalog query took " + longestQueryMillis + "ms",
+                longestQueryMillis <= MAX_QUERY_MILLIS);
+    }
+
+    private static ArrayList<ContentProviderOperation> createAdjustments(long firstId) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < ADJUSTMENTS_PER_BATCH; i++) {
+            Uri adjustUri = BookEntry.buildAdjustUri(firstId + (i % BOOK_COUNT));
+            operations.add(ContentProviderOperation.newUpdate(adjustUri)
+                    .withValue(BookEntry.ADJUST_DELTA, i % 2 == 0 ? 1 : -1).build());
+        }
+        return operations;
+    }
+
+    private long queryFirstId() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, BookEntry._ID + " LIMIT 1");
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int queryCatalogCount() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{
+                BookEntry._ID,
+                BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRODUCT_PRICE,
+                BookEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,914 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SummaryEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link BookProvider}. Each test runs against an isolated copy of the
+ * provider, so the app's own book store database is never touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderTest extends ProviderTestCase2<BookProvider> {
+
+    /** Number of rows used by each run of the bulk load timing test. */
+    private static final int BULK_ROW_COUNT = 1000;
+
+    /** Number of timed runs of the bulk load timing test, after one run to warm up. */
+    private static final int BULK_TIMED_RUNS = 5;
+
+    /**
+     * How many times faster the median bulk insert must be than the median loop of single
+     * inserts. With WAL and synchronous=NORMAL, a single insert doesn't wait for a sync, so
+     * the gap is smaller than it used to be. This margin still holds on slow emulators.
+     */
+    private static final int BULK_SPEEDUP_MARGIN = 3;
+
+    private ContentResolver mResolver;
+
+    public BookProviderTest() {
+        super(BookProvider.class, BookContract.CONTENT_AUTHORITY);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        setContext(InstrumentationRegistry.getTargetContext());
+        super.setUp();
+        mResolver = getMockContentResolver();
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    @Test
+    public void bulkInsert_returnsNumberOfRowsInserted() {
+        ContentValues[] values = createBooks(100);
+
+        int rowsInserted = mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+
+        assertEquals(100, rowsInserted);
+        assertEquals(100, countBooks());
+    }
+
+    @Test
+    public void bulkInsert_skipsInvalidRows() {
+        ContentValues[] values = createBooks(3);
+        values[1].remove(BookEntry.COLUMN_PRODUCT_NAME);
+
+        int rowsInserted = mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+
+        assertEquals(2, rowsInserted);
+        assertEquals(2, countBooks());
+    }
+
+    @Test
+    public void bulkInsert_isFasterThanSingleInserts() {
+        ContentValues[] values = createBooks(BULK_ROW_COUNT);
+
+        // Time both ways of inserting the books a few times over, after a first run that warms
+        // up the database and the compiled statements, and compare the medians, so one slow
+        // run can't decide the result.
+        long[] loopNanos = new long[BULK_TIMED_RUNS];
+        long[] bulkNanos = new long[BULK_TIMED_RUNS];
+        for (int run = -1; run < BULK_TIMED_RUNS; run++) {
+            long loopStart = System.nanoTime();
+            for (ContentValues bookValues : values) {
+                mResolver.insert(BookEntry.CONTENT_URI, bookValues);
+            }
+            long loopTime = System.nanoTime() - loopStart;
+            mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+            long bulkStart = System.nanoTime();
+            int rowsInserted = mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+            long bulkTime = System.nanoTime() - bulkStart;
+            mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+            assertEquals(BULK_ROW_COUNT, rowsInserted);
+            if (run >= 0) {
+                loopNanos[run] = loopTime;
+                bulkNanos[run] = bulkTime;
+            }
+        }
+
+        long loopMedian = median(loopNanos);
+        long bulkMedian = median(bulkNanos);
+        assertTrue("bulkInsert took " + bulkMedian + "ns, insert loop took " + loopMedian
+                        + "ns (medians of " + BULK_TIMED_RUNS + " runs)",
+                bulkMedian * BULK_SPEEDUP_MARGIN <= loopMedian);
+    }
+
+    @Test
+    public void applyBatch_rollsBackEveryOperationOnFailure() throws Exception {
+        ContentValues[] values = createBooks(2);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(values[0]).build());
+        // Updating a row that doesn't exist makes the expected count check fail.
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(BookEntry.CONTENT_URI, Long.MAX_VALUE))
+                .withValues(values[1]).withExpectedCount(1).build());
+
+        try {
+            mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            fail("Expected the batch to fail");
+        } catch (OperationApplicationException expected) {
+            // The whole batch should have been rolled back.
+        }
+
+        assertEquals(0, countBooks());
+    }
+
+    @Test
+    public void notifications_areSentOncePerUriAtTheEndOfTheWindow() {
+        setNotificationWindow(0);
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        Uri adjustUri = BookEntry.buildAdjustUri(ContentUris.parseId(bookUri));
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -1);
+
+        // Three sales of the same book and a new book, all inside one window.
+        setNotificationWindow(2000);
+        long[] before = getNotificationStats();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, mResolver.update(adjustUri, sale, null, null));
+        }
+        mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        long[] during = getNotificationStats();
+        assertEquals(4, during[0] - before[0]);
+        assertEquals(0, during[1] - before[1]);
+
+        // Once the window ends, the book and the books table are notified once each.
+        long[] after = waitForSentNotifications(before[1] + 2);
+        assertEquals(4, after[0] - before[0]);
+        assertEquals(2, after[1] - before[1]);
+    }
+
+    @Test
+    public void notifications_areSentStraightAwayWithNoWindow() {
+        setNotificationWindow(0);
+        long[] before = getNotificationStats();
+
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -1);
+        Uri adjustUri = BookEntry.buildAdjustUri(ContentUris.parseId(bookUri));
+        assertEquals(1, mResolver.update(adjustUri, sale, null, null));
+        assertEquals(1, mResolver.update(adjustUri, sale, null, null));
+
+        long[] after = getNotificationStats();
+        assertEquals(3, after[0] - before[0]);
+        assertEquals(3, after[1] - before[1]);
+    }
+
+    @Test
+    public void notifications_areDroppedWhenTheBatchRollsBack() throws Exception {
+        setNotificationWindow(0);
+        long[] before = getNotificationStats();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(createBooks(1)[0]).build());
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(BookEntry.CONTENT_URI, Long.MAX_VALUE))
+                .withValues(createBooks(1)[0]).withExpectedCount(1).build());
+        try {
+            mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            fail("Expected the batch to fail");
+        } catch (OperationApplicationException expected) {
+            // The insert was rolled back, so nobody is told about it.
+        }
+
+        long[] after = getNotificationStats();
+        assertEquals(1, after[0] - before[0]);
+        assertEquals(0, after[1] - before[1]);
+    }
+
+    @Test
+    public void adjustQuantity_neverDropsBelowZero() {
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        Uri adjustUri = BookEntry.buildAdjustUri(ContentUris.parseId(bookUri));
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -10);
+
+        assertEquals(1, mResolver.update(adjustUri, sale, null, null));
+        assertEquals(0, mResolver.update(adjustUri, sale, null, null));
+        assertEquals(5, queryQuantity(bookUri));
+    }
+
+    @Test
+    public void callAdjustQuantity_returnsTheNewStockLevel() {
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        String id = String.valueOf(ContentUris.parseId(bookUri));
+        Bundle sale = new Bundle();
+        sale.putInt(BookEntry.ADJUST_DELTA, -10);
+
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI,
+                BookContract.METHOD_ADJUST_QUANTITY, id, sale);
+        assertEquals(5, result.getLong(BookEntry.COLUMN_PRODUCT_QUANTITY));
+
+        // Another sale of 10 would go below zero, so it is rejected and nothing changes.
+        result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_ADJUST_QUANTITY, id,
+                sale);
+        assertEquals(-1, result.getLong(BookEntry.COLUMN_PRODUCT_QUANTITY));
+        assertEquals(5, queryQuantity(bookUri));
+
+        Bundle restock = new Bundle();
+        restock.putInt(BookEntry.ADJUST_DELTA, 3);
+        result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_ADJUST_QUANTITY, id,
+                restock);
+        assertEquals(8, result.getLong(BookEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    @Test
+    public void search_matchesWordPrefixesInNameAndSupplier() {
+        ContentValues[] values = createBooks(3);
+        values[0].put(BookEntry.COLUMN_PRODUCT_NAME, "Wyrd Sisters");
+        values[1].put(BookEntry.COLUMN_PRODUCT_NAME, "Guards! Guards!");
+        values[2].put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Sistine Books");
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+
+        Cursor cursor = mResolver.query(BookEntry.buildSearchUri("sist"),
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME}, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void search_stopsOnceCancelledWithoutCountingAFailure() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, createBooks(10));
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS,
+                BookContract.METRICS_RESET, null);
+        // The slash and question mark are typed text, not parts of the URI.
+        Uri searchUri = BookEntry.buildSearchUri("book/1?");
+
+        CancellationSignal cancelled = new CancellationSignal();
+        cancelled.cancel();
+        try {
+            getProvider().query(searchUri, null, null, null, null, cancelled);
+            fail("Expected the search to be cancelled");
+        } catch (OperationCanceledException expected) {
+            // SQLite stopped before reading any books.
+        }
+        Bundle metrics = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS,
+                null, null);
+        assertEquals(0, metrics.getBundle("books/search/* query")
+                .getLong(BookContract.KEY_METRIC_FAILURES));
+
+        Cursor cursor = getProvider().query(searchUri,
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME}, null, null, null,
+                new CancellationSignal());
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Book 1", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void queryById_isServedFromCacheUntilTheBookChanges() {
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        Uri adjustUri = BookEntry.buildAdjustUri(ContentUris.parseId(bookUri));
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -1);
+
+        assertEquals(15, queryQuantity(bookUri));
+        assertEquals(15, queryQuantity(bookUri));
+        mResolver.update(adjustUri, sale, null, null);
+        assertEquals(14, queryQuantity(bookUri));
+
+        Bundle stats = mResolver.call(BookEntry.CONTENT_URI,
+                BookContract.METHOD_ROW_CACHE_STATS, null, null);
+        assertEquals(1, stats.getInt(BookContract.KEY_ROW_CACHE_HITS));
+        assertEquals(2, stats.getInt(BookContract.KEY_ROW_CACHE_MISSES));
+    }
+
+    @Test
+    public void adjustQuantity_appendsMovementsThatCompactionFoldsIntoSnapshot() {
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        long id = ContentUris.parseId(bookUri);
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -2);
+        ContentValues restock = new ContentValues();
+        restock.put(BookEntry.ADJUST_DELTA, 5);
+
+        mResolver.update(BookEntry.buildAdjustUri(id), sale, null, null);
+        mResolver.update(BookEntry.buildAdjustUri(id), restock, null, null);
+
+        Cursor movements = mResolver.query(BookEntry.buildMovementsUri(id),
+                new String[]{StockMovementEntry.COLUMN_DELTA, StockMovementEntry.COLUMN_REASON},
+                null, null, null);
+        try {
+            assertEquals(2, movements.getCount());
+            assertTrue(movements.moveToFirst());
+            assertEquals(5, movements.getInt(0));
+            assertEquals(StockMovementEntry.REASON_RESTOCK, movements.getInt(1));
+        } finally {
+            movements.close();
+        }
+
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_COMPACT_STOCK,
+                null, null);
+        assertEquals(1, result.getInt(BookContract.KEY_BOOKS_COMPACTED));
+        assertEquals(18, queryQuantity(bookUri));
+    }
+
+    @Test
+    public void summary_followsInsertsSalesAndDeletes() {
+        ContentValues[] values = createBooks(3);
+        values[2].put(BookEntry.COLUMN_PRODUCT_GENRE, BookEntry.GENRE_DRAMA);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+        Cursor books = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, BookEntry._ID);
+        long[] ids = new long[books.getCount()];
+        for (int i = 0; books.moveToNext(); i++) {
+            ids[i] = books.getLong(0);
+        }
+        books.close();
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -5);
+
+        mResolver.update(BookEntry.buildAdjustUri(ids[0]), sale, null, null);
+        mResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, ids[1]), null, null);
+
+        Cursor fantasy = mResolver.query(SummaryEntry.buildGenreUri(BookEntry.GENRE_FANTASY),
+                null, null, null, null);
+        try {
+            assertTrue(fantasy.moveToFirst());
+            assertEquals(1, fantasy.getInt(
+                    fantasy.getColumnIndexOrThrow(SummaryEntry.COLUMN_TITLE_COUNT)));
+            assertEquals(10, fantasy.getInt(
+                    fantasy.getColumnIndexOrThrow(SummaryEntry.COLUMN_UNIT_COUNT)));
+        } finally {
+            fantasy.close();
+        }
+
+        Cursor total = mResolver.query(SummaryEntry.TOTAL_CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue(total.moveToFirst());
+            assertEquals(2, total.getInt(
+                    total.getColumnIndexOrThrow(SummaryEntry.COLUMN_TITLE_COUNT)));
+            assertEquals(25, total.getInt(
+                    total.getColumnIndexOrThrow(SummaryEntry.COLUMN_UNIT_COUNT)));
+        } finally {
+            total.close();
+        }
+    }
+
+    @Test
+    public void lowStock_holdsBooksAtOrBelowThresholdGroupedBySupplier() {
+        ContentValues[] values = createBooks(3);
+        values[0].put(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, 10);
+        values[1].put(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, 10);
+        values[1].put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Blackwells");
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+        Cursor books = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, BookEntry._ID);
+        long[] ids = new long[books.getCount()];
+        for (int i = 0; books.moveToNext(); i++) {
+            ids[i] = books.getLong(0);
+        }
+        books.close();
+        ContentValues sale = new ContentValues();
+        sale.put(BookEntry.ADJUST_DELTA, -5);
+
+        // Nothing is low on stock until the first two books have sold down to their threshold.
+        assertEquals(0, countLowStock());
+        mResolver.update(BookEntry.buildAdjustUri(ids[0]), sale, null, null);
+        mResolver.update(BookEntry.buildAdjustUri(ids[1]), sale, null, null);
+        mResolver.update(BookEntry.buildAdjustUri(ids[2]), sale, null, null);
+
+        Cursor lowStock = mResolver.query(BookEntry.LOW_STOCK_URI,
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        try {
+            assertEquals(2, lowStock.getCount());
+            assertTrue(lowStock.moveToFirst());
+            assertEquals(ids[1], lowStock.getLong(0));
+            assertEquals(10, lowStock.getInt(1));
+            assertTrue(lowStock.moveToNext());
+            assertEquals(ids[0], lowStock.getLong(0));
+        } finally {
+            lowStock.close();
+        }
+
+        // Compaction leaves the queue as it is, while a restock or a lower threshold empties it.
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_COMPACT_STOCK, null, null);
+        assertEquals(2, countLowStock());
+        ContentValues restock = new ContentValues();
+        restock.put(BookEntry.ADJUST_DELTA, 1);
+        mResolver.update(BookEntry.buildAdjustUri(ids[0]), restock, null, null);
+        ContentValues threshold = new ContentValues();
+        threshold.put(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, 5);
+        mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, ids[1]), threshold,
+                null, null);
+        assertEquals(0, countLowStock());
+    }
+
+    @Test
+    public void export_streamsEveryBookAsCsvAndJson() throws Exception {
+        // More books than fit in one batch of the exporter, one with a name that needs quoting.
+        int count = BookExporter.BATCH_SIZE * 2 + 1;
+        ContentValues[] values = createBooks(count);
+        values[0].put(BookEntry.COLUMN_PRODUCT_NAME, "Eats, Shoots & \"Leaves\"");
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+
+        InputStream csv = mResolver.openInputStream(BookEntry.EXPORT_URI);
+        CsvReader reader = new CsvReader(new InputStreamReader(csv, "UTF-8"));
+        try {
+            String[] header = reader.readRecord();
+            assertEquals(BookEntry.COLUMN_PRODUCT_NAME, header[1]);
+            String[] first = reader.readRecord();
+            assertEquals("Eats, Shoots & \"Leaves\"", first[1]);
+            int records = 1;
+            while (reader.readRecord() != null) {
+                records++;
+            }
+            assertEquals(count, records);
+        } finally {
+            reader.close();
+        }
+
+        AssetFileDescriptor json = mResolver.openTypedAssetFileDescriptor(BookEntry.EXPORT_URI,
+                BookEntry.EXPORT_JSON_TYPE, null);
+        Scanner scanner = new Scanner(json.createInputStream(), "UTF-8").useDelimiter("\\A");
+        try {
+            JSONArray books = new JSONArray(scanner.next());
+            assertEquals(count, books.length());
+            JSONObject book = books.getJSONObject(count - 1);
+            assertEquals(15, book.getInt(BookEntry.COLUMN_PRODUCT_QUANTITY));
+            assertEquals(5.99, book.getDouble(BookEntry.COLUMN_PRODUCT_PRICE), 0);
+        } finally {
+            scanner.close();
+        }
+
+        assertArrayEquals(new String[]{BookEntry.EXPORT_JSON_TYPE},
+                mResolver.getStreamTypes(BookEntry.EXPORT_URI, "application/*"));
+    }
+
+    @Test
+    public void restore_bringsBackTheBooksBackedUp() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, createBooks(100));
+        File backup = new File(getContext().getCacheDir(), "books.db.gz");
+
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_BACKUP,
+                backup.getPath(), null);
+        assertTrue(backup.length() > 0);
+        assertEquals(backup.length(), result.getLong(BookContract.KEY_BACKUP_BYTES));
+        assertTrue(result.getLong(BookContract.KEY_SNAPSHOT_BYTES) > backup.length());
+
+        // Books sold after the backup are gone again once it has been restored.
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        assertEquals(0, countBooks());
+        result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESTORE,
+                backup.getPath(), null);
+        assertEquals(BookDbHelper.DATABASE_VERSION,
+                result.getInt(BookContract.KEY_SCHEMA_VERSION));
+        assertEquals(100, countBooks());
+        backup.delete();
+    }
+
+    @Test
+    public void supplier_isSharedByItsBooksAndChangedForAllOfThem() {
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(2)[0]);
+        mResolver.insert(BookEntry.CONTENT_URI, createBooks(2)[1]);
+
+        Cursor suppliers = mResolver.query(SupplierEntry.CONTENT_URI,
+                new String[]{SupplierEntry._ID}, null, null, null);
+        long supplierId;
+        try {
+            assertEquals(1, suppliers.getCount());
+            assertTrue(suppliers.moveToFirst());
+            supplierId = suppliers.getLong(0);
+        } finally {
+            suppliers.close();
+        }
+
+        // A new phone number saved with one book shows up in the other one as well.
+        ContentValues phone = new ContentValues();
+        phone.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, "0208666666");
+        assertEquals(1, mResolver.update(bookUri, phone, null, null));
+        Cursor books = mResolver.query(SupplierEntry.buildBooksUri(supplierId),
+                new String[]{BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE}, null, null, null);
+        try {
+            assertEquals(2, books.getCount());
+            while (books.moveToNext()) {
+                assertEquals("0208666666", books.getString(0));
+            }
+        } finally {
+            books.close();
+        }
+    }
+
+    @Test
+    public void query_joinsNamePagesWithoutGapsOrDuplicates() {
+        // Books that share a name, and names with commas, which page keys also use.
+        String[] names = {"Mort", "Eric", "Mort", "Good Omens, Nice", "Mort", "Sourcery",
+                "Eric", "Mort, Again", ",", "Mort"};
+        ContentValues[] values = createBooks(names.length);
+        for (int i = 0; i < names.length; i++) {
+            values[i].put(BookEntry.COLUMN_PRODUCT_NAME, names[i]);
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+        ArrayList<Long> allIds = queryIds(BookEntry.CONTENT_URI, BookEntry.PAGE_SORT_ORDER);
+        assertEquals(names.length, allIds.size());
+
+        // Read the catalog 3 books at a time, each page after the last book of the one before.
+        ArrayList<Long> pagedIds = new ArrayList<>();
+        ArrayList<String> lastKeys = new ArrayList<>();
+        String afterKey = null;
+        while (true) {
+            Cursor page = mResolver.query(BookEntry.buildPageUri(afterKey, null, 3),
+                    new String[] {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME}, null, null,
+                    null);
+            try {
+                if (!page.moveToLast()) {
+                    break;
+                }
+                afterKey = BookEntry.buildPageKey(page.getString(1), page.getLong(0));
+                lastKeys.add(afterKey);
+                page.moveToPosition(-1);
+                while (page.moveToNext()) {
+                    pagedIds.add(page.getLong(0));
+                }
+            } finally {
+                page.close();
+            }
+        }
+        assertEquals(allIds, pagedIds);
+
+        // A page that ends at a key includes the book with that key, and the page starting
+        // after it picks up straight after it.
+        ArrayList<Long> joinedIds = new ArrayList<>();
+        String startKey = null;
+        for (String untilKey : lastKeys) {
+            joinedIds.addAll(queryIds(BookEntry.buildPageUri(startKey, untilKey, 0), null));
+            startKey = untilKey;
+        }
+        assertEquals(allIds, joinedIds);
+        assertEquals(allIds.subList(0, 1),
+                queryIds(BookEntry.buildPageUri(null, lastKeys.get(0), 1), null));
+    }
+
+    @Test
+    public void query_rejectsInvalidLimitsAndPageKeys() {
+        String[] invalidLimits = {"0", "-1", "ten", "1; DROP TABLE books"};
+        for (String limit : invalidLimits) {
+            assertQueryRejected(BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, limit).build());
+        }
+        String[] invalidKeys = {"Mort", "Mort,", "Mort,one"};
+        for (String key : invalidKeys) {
+            assertQueryRejected(BookEntry.buildPageUri(key, null, 10));
+            assertQueryRejected(BookEntry.buildPageUri(null, key, 10));
+        }
+        // Keys for other sort orders start with the sort value.
+        Uri priceUri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_SORT, BookContract.SORT_PRICE)
+                .build();
+        assertQueryRejected(BookEntry.buildPageUri(priceUri, "Mort,1", null, 10));
+        assertQueryRejected(BookEntry.buildPageUri(priceUri, "cheap,Mort,1", null, 10));
+    }
+
+    @Test
+    public void query_sortsFiltersAndPagesByQueryParameters() {
+        // Prices fall as the names rise, so the price order is the reverse of the name order.
+        ContentValues[] values = createBooks(6);
+        for (int i = 0; i < values.length; i++) {
+            BookEntry.putPrice(values[i], 999 - i * 100);
+            values[i].put(BookEntry.COLUMN_PRODUCT_GENRE,
+                    i % 2 == 0 ? BookEntry.GENRE_FANTASY : BookEntry.GENRE_HORROR);
+        }
+        values[1].put(BookEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        values[5].put(BookEntry.COLUMN_PRODUCT_GENRE, BookEntry.GENRE_DRAMA);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+
+        // Book 0 costs too much, Book 1 is sold out and Book 5 is of another genre.
+        Uri booksUri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_SORT, BookContract.SORT_PRICE)
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_GENRE,
+                        String.valueOf(BookEntry.GENRE_FANTASY))
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_GENRE,
+                        String.valueOf(BookEntry.GENRE_HORROR))
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_MAX_PRICE, "899")
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_IN_STOCK, "true")
+                .build();
+        String[] projection = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_PRODUCT_PRICE};
+
+        Cursor firstPage = mResolver.query(BookEntry.buildPageUri(booksUri, null, null, 2),
+                projection, null, null, null);
+        String lastKey;
+        try {
+            assertEquals(2, firstPage.getCount());
+            assertTrue(firstPage.moveToFirst());
+            assertEquals("Book 4", firstPage.getString(1));
+            assertTrue(firstPage.moveToNext());
+            assertEquals("Book 3", firstPage.getString(1));
+            lastKey = BookEntry.buildPageKey(firstPage.getLong(2), firstPage.getString(1),
+                    firstPage.getLong(0));
+        } finally {
+            firstPage.close();
+        }
+
+        Cursor secondPage = mResolver.query(BookEntry.buildPageUri(booksUri, lastKey, null, 2),
+                projection, null, null, null);
+        try {
+            assertEquals(1, secondPage.getCount());
+            assertTrue(secondPage.moveToFirst());
+            assertEquals("Book 2", secondPage.getString(1));
+        } finally {
+            secondPage.close();
+        }
+
+        // Only the sort orders in the contract are accepted, never a column or expression.
+        try {
+            mResolver.query(BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookContract.QUERY_PARAMETER_SORT, "name DESC")
+                    .build(), projection, null, null, null);
+            fail("Expected the sort order to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The provider only sorts by the columns it knows.
+        }
+    }
+
+    @Test
+    public void catalogQuery_isNotifiedApartFromSingleBooks() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, createBooks(3));
+        Uri pageUri = BookEntry.buildPageUri(null, null, 2);
+        String[] projection = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME};
+
+        // Pages listen to the catalog URI, which a change to a single book doesn't reach.
+        Cursor page = mResolver.query(pageUri, projection, null, null, null);
+        String untilKey;
+        long firstId;
+        try {
+            assertEquals(BookEntry.CATALOG_URI, page.getNotificationUri());
+            assertTrue(page.moveToLast());
+            untilKey = BookEntry.buildPageKey(page.getString(1), page.getLong(0));
+            assertTrue(page.moveToFirst());
+            firstId = page.getLong(0);
+        } finally {
+            page.close();
+        }
+        Cursor books = mResolver.query(BookEntry.CONTENT_URI, projection, null, null, null);
+        try {
+            assertEquals(BookEntry.CONTENT_URI, books.getNotificationUri());
+        } finally {
+            books.close();
+        }
+
+        // A changed book is found on its own only while it is within the books loaded.
+        Uri bookUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, firstId);
+        assertEquals(1, countRows(BookEntry.buildPageUri(null, untilKey, 0), firstId));
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book 9");
+        assertEquals(1, mResolver.update(bookUri, values, null, null));
+        assertEquals(0, countRows(BookEntry.buildPageUri(null, untilKey, 0), firstId));
+    }
+
+    @Test
+    public void metrics_countCallsAndRowsByUriPattern() {
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS,
+                BookContract.METRICS_RESET, null);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, createBooks(10));
+        Uri bookUri = mResolver.insert(BookEntry.CONTENT_URI, createBooks(1)[0]);
+        queryQuantity(bookUri);
+        queryQuantity(bookUri);
+
+        Bundle metrics = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS,
+                null, null);
+        Bundle bulkInserts = metrics.getBundle("books bulk_insert");
+        assertEquals(1, bulkInserts.getLong(BookContract.KEY_METRIC_CALLS));
+        assertEquals(10, bulkInserts.getLong(BookContract.KEY_METRIC_ROWS));
+        Bundle queries = metrics.getBundle("books/# query");
+        assertEquals(2, queries.getLong(BookContract.KEY_METRIC_CALLS));
+        assertEquals(0, queries.getLong(BookContract.KEY_METRIC_FAILURES));
+        assertTrue(queries.getLong(BookContract.KEY_METRIC_P50_MICROS)
+                <= queries.getLong(BookContract.KEY_METRIC_MAX_MICROS));
+        long histogramCalls = 0;
+        for (long calls : queries.getLongArray(BookContract.KEY_METRIC_HISTOGRAM)) {
+            histogramCalls += calls;
+        }
+        assertEquals(2, histogramCalls);
+
+        // A URI the provider doesn't know is counted as a failure.
+        try {
+            mResolver.delete(Uri.withAppendedPath(BookContract.BASE_CONTENT_URI, "unknown"),
+                    null, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        metrics = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS,
+                BookContract.METRICS_RESET, null);
+        assertEquals(1, metrics.getBundle("unmatched delete")
+                .getLong(BookContract.KEY_METRIC_FAILURES));
+        metrics = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_METRICS, null, null);
+        assertTrue(metrics.isEmpty());
+    }
+
+    @Test
+    public void slowQueries_recordRedactedSelectionAndPlanOnceSwitchedOn() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, createBooks(10));
+        String selection = BookEntry.COLUMN_PRODUCT_NAME + " = 'Book 3' AND "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + " > ?";
+        String sortOrder = BookEntry.COLUMN_PRODUCT_QUANTITY + " DESC";
+
+        // Nothing is recorded until a threshold is set.
+        mResolver.query(BookEntry.CONTENT_URI, null, selection, new String[] {"7"}, sortOrder)
+                .close();
+        Bundle dump = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SLOW_QUERIES,
+                BookContract.SLOW_QUERIES_CLEAR, null);
+        assertTrue(dump.<Bundle>getParcelableArrayList(BookContract.KEY_SLOW_QUERIES).isEmpty());
+
+        // With a threshold of zero every operation is slow.
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SET_SLOW_QUERY_THRESHOLD, "0",
+                null);
+        try {
+            mResolver.query(BookEntry.CONTENT_URI, null, selection, new String[] {"7"}, sortOrder)
+                    .close();
+        } finally {
+            mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SET_SLOW_QUERY_THRESHOLD,
+                    "-1", null);
+        }
+        mResolver.query(BookEntry.CONTENT_URI, null, null, null, null).close();
+
+        dump = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SLOW_QUERIES,
+                BookContract.SLOW_QUERIES_CLEAR, null);
+        ArrayList<Bundle> records = dump.getParcelableArrayList(BookContract.KEY_SLOW_QUERIES);
+        assertEquals(1, records.size());
+        Bundle record = records.get(0);
+        assertEquals("books", record.getString(BookContract.KEY_SLOW_QUERY_URI));
+        assertEquals("query", record.getString(BookContract.KEY_SLOW_QUERY_OPERATION));
+        assertEquals(BookEntry.COLUMN_PRODUCT_NAME + " = ? AND "
+                        + BookEntry.COLUMN_PRODUCT_QUANTITY + " > ?",
+                record.getString(BookContract.KEY_SLOW_QUERY_SELECTION));
+        assertEquals(sortOrder, record.getString(BookContract.KEY_SLOW_QUERY_SORT_ORDER));
+        assertEquals(1, record.getInt(BookContract.KEY_SLOW_QUERY_ROWS));
+        String plan = record.getString(BookContract.KEY_SLOW_QUERY_PLAN);
+        // The name is looked up through its index, but sorting by quantity needs a sort.
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_NAME));
+        assertTrue(plan, plan.contains("TEMP B-TREE FOR ORDER BY"));
+        assertFalse(plan, plan.contains("Book 3"));
+    }
+
+    /**
+     * Creates the given number of valid book rows.
+     */
+    static ContentValues[] createBooks(int count) {
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues bookValues = new ContentValues();
+            bookValues.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            bookValues.put(BookEntry.COLUMN_PRODUCT_GENRE, BookEntry.GENRE_FANTASY);
+            BookEntry.putPrice(bookValues, 599);
+            bookValues.put(BookEntry.COLUMN_PRODUCT_QUANTITY, 15);
+            bookValues.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Waterstones");
+            bookValues.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, "0208555555");
+            values[i] = bookValues;
+        }
+        return values;
+    }
+
+    private int queryQuantity(Uri bookUri) {
+        Cursor cursor = mResolver.query(bookUri,
+                new String[]{BookEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the IDs of the books at the given URI, in the given order.
+     */
+    private ArrayList<Long> queryIds(Uri uri, String sortOrder) {
+        Cursor cursor = mResolver.query(uri, new String[] {BookEntry._ID}, null, null, sortOrder);
+        try {
+            ArrayList<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertQueryRejected(Uri uri) {
+        try {
+            mResolver.query(uri, new String[] {BookEntry._ID}, null, null, null).close();
+            fail("Expected " + uri + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The provider checks the page parameters before querying.
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private void setNotificationWindow(long windowMillis) {
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SET_NOTIFICATION_WINDOW,
+                String.valueOf(windowMillis), null);
+    }
+
+    /**
+     * Returns the number of notifications asked for and the number actually sent.
+     */
+    private long[] getNotificationStats() {
+        Bundle stats = mResolver.call(BookEntry.CONTENT_URI,
+                BookContract.METHOD_NOTIFICATION_STATS, null, null);
+        return new long[] {stats.getLong(BookContract.KEY_NOTIFICATIONS_REQUESTED),
+                stats.getLong(BookContract.KEY_NOTIFICATIONS_SENT)};
+    }
+
+    /**
+     * Waits up to 10 seconds for the given number of notifications to have been sent in all, and
+     * returns the notification stats then.
+     */
+    private long[] waitForSentNotifications(long sentCount) {
+        long deadline = SystemClock.uptimeMillis() + 10000;
+        long[] stats = getNotificationStats();
+        while (stats[1] < sentCount && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(50);
+            stats = getNotificationStats();
+        }
+        return stats;
+    }
+
+    private int countRows(Uri uri, long id) {
+        Cursor cursor = mResolver.query(uri, new String[] {BookEntry._ID}, BookEntry._ID + "=?",
+                new String[] {String.valueOf(id)}, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countLowStock() {
+        Cursor cursor = mResolver.query(BookEntry.LOW_STOCK_URI, new String[]{BookEntry._ID},
+                null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countBooks() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
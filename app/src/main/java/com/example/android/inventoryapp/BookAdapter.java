@@ -0,0 +1,235 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link BookAdapter} is an adapter for a {@link RecyclerView} that shows a list of
+ * {@link BookListItem}s. When the list changes, the difference between the old and the new list
+ * is worked out on a background thread, so only the rows that actually changed are bound again.
+ */
+public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder> {
+
+    /**
+     * Interface for receiving clicks on the books in the list.
+     */
+    public interface OnBookClickListener {
+        /**
+         * Called when the book with the given ID has been clicked.
+         */
+        void onBookClick(long id);
+    }
+
+    /** Listener for clicks on the books, or null. */
+    private final OnBookClickListener mClickListener;
+
+    /**
+     * Formatter that adds the local currency to the prices, shared by all rows.
+     * Found how to do this here - http://www.avajava.com/tutorials/lessons/how-do-i-use-
+     * numberformat-to-format-currencies.html
+     * Author Deron Eriksson written in 2014.
+     */
+    private final NumberFormat mPriceFormat = NumberFormat.getCurrencyInstance();
+
+    /** The books currently shown in the list. */
+    private List<BookListItem> mItems = Collections.emptyList();
+
+    /**
+     * Number of times the list has been swapped. A difference that finishes after a newer list
+     * has been swapped in is thrown away.
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs a new {@link BookAdapter}.
+     *
+     * @param clickListener Listener for clicks on the books, or null.
+     */
+    public BookAdapter(OnBookClickListener clickListener) {
+        mClickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the given list of books. The difference from the current list is calculated on a
+     * background thread, and then only the rows that changed are updated.
+     *
+     * @param items The books to show, which must not be changed afterwards.
+     */
+    public void swapItems(final List<BookListItem> items) {
+        final int generation = ++mGeneration;
+        final List<BookListItem> oldItems = mItems;
+
+        // If either list is empty there is nothing to compare, so swap straight away.
+        if (oldItems.isEmpty() || items.isEmpty()) {
+            mItems = items;
+            notifyDataSetChanged();
+            return;
+        }
+
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(new ItemDiffCallback(oldItems, items));
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult result) {
+                // Only apply the difference if no newer list has been swapped in since.
+                if (generation == mGeneration) {
+                    mItems = items;
+                    result.dispatchUpdatesTo(BookAdapter.this);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Returns the books currently shown in the list.
+     */
+    public List<BookListItem> getItems() {
+        return mItems;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).id;
+    }
+
+    /**
+     * Makes a new blank list item view and its view holder. No data is set (or bound) to the
+     * views yet.
+     */
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in the list_item.xml.
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.list_item, parent, false);
+        return new BookViewHolder(view);
+    }
+
+    /**
+     * This method binds the book data at the given position to the list item in the view holder.
+     */
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        BookListItem item = mItems.get(position);
+
+        // Update the TextViews with the attributes for the current book.
+        holder.mNameTextView.setText(item.name);
+        holder.mPriceTextView.setText(mPriceFormat.format(BookEntry.toAmount(item.price)));
+        holder.mQuantityTextView.setText(String.valueOf(item.quantity));
+    }
+
+    /**
+     * {@link BookViewHolder} holds the views of one list item, so they are only looked up once
+     * when the item is created. Its click listeners are also created once, and find the book for
+     * the item's current position when they are clicked.
+     */
+    class BookViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView mNameTextView;
+        private final TextView mPriceTextView;
+        private final TextView mQuantityTextView;
+
+        BookViewHolder(View itemView) {
+            super(itemView);
+
+            // Find individual views that we want to modify in the list item layout.
+            mNameTextView = itemView.findViewById(R.id.name);
+            mPriceTextView = itemView.findViewById(R.id.price);
+            mQuantityTextView = itemView.findViewById(R.id.quantity_in_stock);
+            Button saleButton = itemView.findViewById(R.id.sale_button);
+
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getAdapterPosition();
+                    if (mClickListener != null && position != RecyclerView.NO_POSITION) {
+                        mClickListener.onBookClick(mItems.get(position).id);
+                    }
+                }
+            });
+
+            saleButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getAdapterPosition();
+                    if (position == RecyclerView.NO_POSITION) {
+                        return;
+                    }
+                    Context context = v.getContext();
+                    // This sets up the change to the items' stock quantity, a decrease by 1.
+                    ContentValues values = new ContentValues();
+                    values.put(BookEntry.ADJUST_DELTA, -1);
+                    // This points to the stock adjustment URI of the book on the list to change.
+                    Uri adjustBook = BookEntry.buildAdjustUri(mItems.get(position).id);
+                    // This decreases the quantity in the database via the content resolver. If
+                    // no row was changed there is no more stock, so display a toast message.
+                    int rowsUpdated = context.getContentResolver().update(adjustBook, values,
+                            null, null);
+                    if (rowsUpdated == 0) {
+                        Toast.makeText(context, R.string.no_stock, Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link ItemDiffCallback} compares an old and a new list of books for {@link DiffUtil}.
+     * Books are the same item if they have the same ID, and have the same contents if every
+     * value shown in the row is equal.
+     */
+    private static class ItemDiffCallback extends DiffUtil.Callback {
+
+        private final List<BookListItem> mOldItems;
+        private final List<BookListItem> mNewItems;
+
+        ItemDiffCallback(List<BookListItem> oldItems, List<BookListItem> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).id == mNewItems.get(newItemPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).equals(mNewItems.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.android.inventoryapp;
+
+import android.app.IntentService;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.BookContract.ImportEntry;
+import com.example.android.inventoryapp.data.BookImporter;
+
+import java.io.IOException;
+
+/**
+ * Imports books from a CSV file in the background, see {@link BookImporter}. The progress is shown
+ * in a notification while the import runs. If the app is stopped part way through, the system
+ * starts the service again with the same file, and the import carries on from the last chunk of
+ * books it committed.
+ */
+public class BookImportService extends IntentService {
+
+    /** Tag for the log messages. */
+    private static final String LOG_TAG = BookImportService.class.getSimpleName();
+
+    /** ID of the notification channel for imports. */
+    private static final String CHANNEL_ID = "imports";
+
+    /** ID of the notification showing the progress of an import. */
+    private static final int NOTIFICATION_ID = 1;
+
+    /** Columns of an import read once it has ended. */
+    private static final String[] RESULT_PROJECTION = {
+            ImportEntry.COLUMN_STATUS,
+            ImportEntry.COLUMN_BOOKS_IMPORTED,
+            ImportEntry.COLUMN_RECORDS_REJECTED
+    };
+
+    /**
+     * Constructs a new {@link BookImportService}.
+     */
+    public BookImportService() {
+        super(LOG_TAG);
+        // If the process is stopped during an import, have the system start it again.
+        setIntentRedelivery(true);
+    }
+
+    /**
+     * Start importing the books in the CSV file at the given URI.
+     */
+    public static void start(Context context, Uri source) {
+        Intent intent = new Intent(context, BookImportService.class);
+        intent.setData(source);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || intent.getData() == null) {
+            return;
+        }
+
+        // Run in the foreground, so the import isn't stopped as soon as the app leaves the screen.
+        createNotificationChannel();
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .setOnlyAlertOnce(true)
+                .setProgress(0, 0, true);
+        startForeground(NOTIFICATION_ID, builder.build());
+
+        final NotificationManager manager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        BookImporter.ProgressListener listener = new BookImporter.ProgressListener() {
+            @Override
+            public void onProgress(long recordsRead, long booksImported, long recordsRejected) {
+                builder.setContentText(getString(R.string.import_notification_progress,
+                        booksImported, recordsRejected));
+                manager.notify(NOTIFICATION_ID, builder.build());
+            }
+        };
+
+        BookImporter importer = new BookImporter(getContentResolver(), getResources());
+        String result;
+        try {
+            result = getResult(importer.importBooks(intent.getData(), listener));
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to import " + intent.getData(), e);
+            result = getString(R.string.import_notification_failed);
+        }
+
+        // Leave the result in a notification of its own once the service has stopped.
+        stopForeground(true);
+        manager.notify(NOTIFICATION_ID, new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download_done)
+                .setContentTitle(getString(R.string.import_notification_title))
+                .setContentText(result)
+                .build());
+    }
+
+    /**
+     * Returns the message telling the user how the import at the given URI ended.
+     */
+    private String getResult(Uri importUri) {
+        Cursor cursor = getContentResolver().query(importUri, RESULT_PROJECTION, null, null,
+                null);
+        try {
+            if (cursor == null || !cursor.moveToFirst()
+                    || cursor.getInt(0) != ImportEntry.STATUS_FINISHED) {
+                return getString(R.string.import_notification_failed);
+            }
+            return getString(R.string.import_notification_finished, cursor.getLong(1),
+                    cursor.getLong(2));
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Create the notification channel for imports, which Android Oreo and later need before a
+     * notification can be shown.
+     */
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.import_notification_channel),
+                    NotificationManager.IMPORTANCE_LOW);
+            ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE))
+                    .createNotificationChannel(channel);
+        }
+    }
+}
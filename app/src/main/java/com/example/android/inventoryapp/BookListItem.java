@@ -0,0 +1,67 @@
+package com.example.android.inventoryapp;
+
+/**
+ * {@link BookListItem} holds the values of one book shown in the catalog list. Items are read
+ * from the cursor once, when a page of books is loaded, so binding a row never touches a cursor.
+ */
+public final class BookListItem {
+
+    /** ID of the book in the database. */
+    final long id;
+
+    /** Name of the book. */
+    final String name;
+
+    /** Genre of the book. */
+    final int genre;
+
+    /** Price of the book, in minor units of the currency. */
+    final long price;
+
+    /** How much stock there is of the book. */
+    final int quantity;
+
+    /**
+     * Constructs a new {@link BookListItem}.
+     *
+     * @param id       ID of the book in the database.
+     * @param name     Name of the book.
+     * @param genre    Genre of the book.
+     * @param price    Price of the book, in minor units of the currency.
+     * @param quantity How much stock there is of the book.
+     */
+    BookListItem(long id, String name, int genre, long price, int quantity) {
+        this.id = id;
+        this.name = name;
+        this.genre = genre;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Returns whether the given item shows exactly the same values as this one.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BookListItem)) {
+            return false;
+        }
+        BookListItem other = (BookListItem) o;
+        return id == other.id && genre == other.genre && price == other.price
+                && quantity == other.quantity
+                && (name == null ? other.name == null : name.equals(other.name));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + genre;
+        result = 31 * result + (int) (price ^ (price >>> 32));
+        result = 31 * result + quantity;
+        return result;
+    }
+}
@@ -1,24 +1,39 @@
 package com.example.android.inventoryapp;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.AsyncQueryHandler;
+import android.content.AsyncTaskLoader;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 
+import com.example.android.inventoryapp.data.BookContract;
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.SummaryEntry;
+
+import java.text.NumberFormat;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Displays list of books that were entered and stored in the app.
@@ -26,11 +41,180 @@ import com.example.android.inventoryapp.data.BookContract.BookEntry;
 public class CatalogActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>{
 
-    /** Identifier for the book loader */
+    /** Identifier for the loader of the first page of books. Page n uses BOOK_LOADER + n. */
     private static final int BOOK_LOADER = 0;
 
-    /** Adapter for the ListView */
-    BookCursorAdapter mCursorAdapter;
+    /** Identifier for the loader of the stock summary, apart from the page loaders. */
+    private static final int SUMMARY_LOADER = -1;
+
+    /** Identifier for the loader of the search results, apart from the page loaders. */
+    private static final int SEARCH_LOADER = -2;
+
+    /** How long typing has to pause for before the search runs, in milliseconds. */
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
+    /** Columns of the stock summary shown above the catalog. */
+    private static final String[] SUMMARY_PROJECTION = {
+            SummaryEntry.COLUMN_GENRE,
+            SummaryEntry.COLUMN_TITLE_COUNT,
+            SummaryEntry.COLUMN_UNIT_COUNT,
+            SummaryEntry.COLUMN_STOCK_VALUE
+    };
+
+    /** Request code for picking the CSV file to import books from. */
+    private static final int REQUEST_IMPORT_FILE = 1;
+
+    /** Number of books loaded in each page of the catalog. */
+    private static final int PAGE_SIZE = 50;
+
+    /** How close to the end of the loaded books the list can scroll before the next page loads. */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /** Loader argument holding the content URI of the page to load. */
+    private static final String ARG_PAGE_URI = "page_uri";
+
+    /** Saved state key for the page keys of the pages that have been started. */
+    private static final String STATE_PAGE_START_KEYS = "page_start_keys";
+
+    /** Saved state key for the text being searched for. */
+    private static final String STATE_SEARCH_TEXT = "search_text";
+
+    /** Saved state keys for the sort order and filters of the catalog. */
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_GENRES = "genres";
+    private static final String STATE_PRICE_RANGE = "price_range";
+    private static final String STATE_IN_STOCK_ONLY = "in_stock_only";
+
+    /** Sort orders the catalog can be shown in, in the same order as {@link #SORT_ITEMS}. */
+    private static final String[] SORTS = {
+            BookContract.SORT_NAME,
+            BookContract.SORT_PRICE,
+            BookContract.SORT_QUANTITY,
+            BookContract.SORT_GENRE
+    };
+
+    /** Menu items picking each of the {@link #SORTS}. */
+    private static final int[] SORT_ITEMS = {
+            R.id.action_sort_name,
+            R.id.action_sort_price,
+            R.id.action_sort_quantity,
+            R.id.action_sort_genre
+    };
+
+    /**
+     * Price ranges the catalog can be filtered to, as the lowest and highest price in minor
+     * units, or -1 where the range is open, in the same order as {@link #PRICE_RANGE_ITEMS}.
+     */
+    private static final long[][] PRICE_RANGES = {
+            {-1, -1},
+            {-1, 499},
+            {500, 999},
+            {1000, 1999},
+            {2000, -1}
+    };
+
+    /** Menu items picking each of the {@link #PRICE_RANGES}. */
+    private static final int[] PRICE_RANGE_ITEMS = {
+            R.id.action_price_any,
+            R.id.action_price_under_5,
+            R.id.action_price_5_to_10,
+            R.id.action_price_10_to_20,
+            R.id.action_price_over_20
+    };
+
+    /** Genres the catalog can be filtered to, in the order the genre dialog lists them. */
+    private static final int[] GENRES = {
+            BookEntry.GENRE_FANTASY,
+            BookEntry.GENRE_SCI_FI,
+            BookEntry.GENRE_MYSTERY,
+            BookEntry.GENRE_ROMANCE,
+            BookEntry.GENRE_HORROR,
+            BookEntry.GENRE_ACTION_AND_ADVENTURE,
+            BookEntry.GENRE_DRAMA,
+            BookEntry.GENRE_UNKNOWN
+    };
+
+    /** Adapter for the RecyclerView */
+    BookAdapter mBookAdapter;
+
+    /** TextView showing the stock summary of each genre. */
+    private TextView mSummaryTextView;
+
+    /** The pages of books that have been loaded so far, in catalog order. */
+    private final ArrayList<CatalogPageLoader.Page> mPages = new ArrayList<>();
+
+    /**
+     * Page key of the book just before each page, in the same order as {@link #mPages}. It is
+     * null for the first page.
+     */
+    private final ArrayList<String> mPageStartKeys = new ArrayList<>();
+
+    /** Sort order of the catalog, one of the {@link #SORTS}. */
+    private String mSort = BookContract.SORT_NAME;
+
+    /** Genres the catalog is filtered to, or none for books of every genre. */
+    private ArrayList<Integer> mGenres = new ArrayList<>();
+
+    /** Position in {@link #PRICE_RANGES} of the price range the catalog is filtered to. */
+    private int mPriceRange;
+
+    /** Whether the catalog only shows books that are in stock. */
+    private boolean mInStockOnly;
+
+    /** Text being searched for, or empty if the catalog isn't being searched. */
+    private String mSearchText = "";
+
+    /** The books found by the search, or null if there are none to show. */
+    private CatalogPageLoader.Page mSearchResults;
+
+    /**
+     * Books that changed since the page they are in was loaded, as fetched again on their own.
+     * They are shown instead of the books in the pages until those pages load again.
+     */
+    private final ChangedBooks mChangedBooks = new ChangedBooks();
+
+    /**
+     * Number of times the catalog has been loaded again from the first page. A changed book
+     * fetched for an earlier sort order or filter is thrown away.
+     */
+    private int mCatalogGeneration;
+
+    /** Fetches a single changed book in the background, see {@link #onBookChanged}. */
+    private AsyncQueryHandler mBookQueryHandler;
+
+    /** Handler the search waits on until typing pauses. */
+    private final Handler mHandler = new Handler();
+
+    /** Runs the search for {@link #mSearchText} once typing has paused. */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            getLoaderManager().restartLoader(SEARCH_LOADER, buildSearchArgs(),
+                    CatalogActivity.this);
+        }
+    };
+
+    /**
+     * Watches the books for changes to a single book, which are notified on the URI of the book
+     * alone. The pages only hear of changes to the whole catalog, so a sale doesn't query every
+     * page again.
+     */
+    private final ContentObserver mBookObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before Jelly Bean there is no URI to tell which book changed, so load the pages
+            // again as a whole.
+            reloadLoadedPages();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long id = getBookId(uri);
+            if (id != -1) {
+                onBookChanged(id);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,20 +231,16 @@ public class CatalogActivity extends AppCompatActivity implements
             }
         });
 
-        // Find the ListView which will be populated with the book data.
-        final ListView bookListView = findViewById(R.id.list);
-
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyView);
+        // Find the RecyclerView which will be populated with the book data.
+        final RecyclerView bookListView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        bookListView.setLayoutManager(layoutManager);
 
-        // Setup an Adapter to create a list item for each row of book data in the Cursor.
-        mCursorAdapter = new BookCursorAdapter(this, null);
-        bookListView.setAdapter(mCursorAdapter);
-
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Setup an Adapter to create a list item for each book that has been loaded. Clicking on
+        // a book opens it in the {@link DetailedViewActivity}.
+        mBookAdapter = new BookAdapter(new BookAdapter.OnBookClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onBookClick(long id) {
                 // Create new intent to go to {@link DetailedViewActivity}.
                 Intent intent = new Intent(CatalogActivity.this, DetailedViewActivity.class);
 
@@ -76,9 +256,488 @@ public class CatalogActivity extends AppCompatActivity implements
                 startActivity(intent);
             }
         });
+        bookListView.setAdapter(mBookAdapter);
+
+        // Show the empty view only when the list has 0 items.
+        final View emptyView = findViewById(R.id.empty_view);
+        mBookAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            private void updateEmptyView() {
+                emptyView.setVisibility(mBookAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+            }
+        });
+
+        // Load the next page of books when the list is scrolled close to the end of the books
+        // loaded so far.
+        bookListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition()
+                        >= mBookAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        // Kick off the loader for the stock summary above the list.
+        mSummaryTextView = findViewById(R.id.summary_text);
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
+
+        // Restore the sort order and filters first, as the page keys were made for them.
+        if (savedInstanceState != null) {
+            mSort = savedInstanceState.getString(STATE_SORT, BookContract.SORT_NAME);
+            mGenres = savedInstanceState.getIntegerArrayList(STATE_GENRES);
+            mPriceRange = savedInstanceState.getInt(STATE_PRICE_RANGE);
+            mInStockOnly = savedInstanceState.getBoolean(STATE_IN_STOCK_ONLY);
+            mSearchText = savedInstanceState.getString(STATE_SEARCH_TEXT, "");
+        }
+
+        // Reconnect to the search that was running before the activity was recreated.
+        if (!mSearchText.isEmpty()) {
+            getLoaderManager().initLoader(SEARCH_LOADER, buildSearchArgs(), this);
+        }
+
+        // Kick off the loader for the first page, or reconnect to the loaders of all the pages
+        // that were loaded before the activity was recreated.
+        ArrayList<String> pageStartKeys = savedInstanceState == null ? null :
+                savedInstanceState.getStringArrayList(STATE_PAGE_START_KEYS);
+        if (pageStartKeys == null) {
+            loadPage(null);
+        } else {
+            for (String pageStartKey : pageStartKeys) {
+                loadPage(pageStartKey);
+            }
+        }
+
+        // Fetch a book on its own when only that book changes.
+        mBookQueryHandler = new AsyncQueryHandler(getContentResolver()) {
+            @Override
+            protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+                long[] fetch = (long[]) cookie;
+                onBookFetched(token, fetch[0], fetch[1], cursor);
+            }
+        };
+        getContentResolver().registerContentObserver(BookEntry.CONTENT_URI, true,
+                mBookObserver);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putStringArrayList(STATE_PAGE_START_KEYS, mPageStartKeys);
+        outState.putString(STATE_SORT, mSort);
+        outState.putIntegerArrayList(STATE_GENRES, mGenres);
+        outState.putInt(STATE_PRICE_RANGE, mPriceRange);
+        outState.putBoolean(STATE_IN_STOCK_ONLY, mInStockOnly);
+        outState.putString(STATE_SEARCH_TEXT, mSearchText);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        getContentResolver().unregisterContentObserver(mBookObserver);
+        // Throw away any book still being fetched.
+        mCatalogGeneration++;
+    }
+
+    /**
+     * Returns the loader arguments for the search for {@link #mSearchText}.
+     */
+    private Bundle buildSearchArgs() {
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_PAGE_URI, BookEntry.buildSearchUri(mSearchText));
+        return args;
+    }
+
+    /**
+     * Search for the given text once typing has paused, or go back to the catalog if it is
+     * empty. The search for the text before is no longer wanted, so if it is still running it is
+     * cancelled straight away, which stops its query in SQLite. Only the search for the last
+     * text typed runs to the end.
+     */
+    private void onSearchTextChanged(String text) {
+        text = text.trim();
+        if (text.equals(mSearchText)) {
+            return;
+        }
+        mSearchText = text;
+        mHandler.removeCallbacks(mSearchRunnable);
+
+        AsyncTaskLoader<Cursor> searchLoader =
+                (AsyncTaskLoader<Cursor>) getLoaderManager().<Cursor>getLoader(SEARCH_LOADER);
+        if (searchLoader != null) {
+            searchLoader.cancelLoad();
+        }
+
+        if (text.isEmpty()) {
+            getLoaderManager().destroyLoader(SEARCH_LOADER);
+            mSearchResults = null;
+            showLoadedPages();
+        } else {
+            mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Returns the content URI of the books in the catalog, with the sort order and filters as
+     * query parameters, so the provider sorts and filters the books in the database.
+     */
+    private Uri buildCatalogUri() {
+        Uri.Builder builder = BookEntry.CONTENT_URI.buildUpon();
+        if (!BookContract.SORT_NAME.equals(mSort)) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_SORT, mSort);
+        }
+        for (int genre : mGenres) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_GENRE,
+                    String.valueOf(genre));
+        }
+        long[] priceRange = PRICE_RANGES[mPriceRange];
+        if (priceRange[0] >= 0) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_MIN_PRICE,
+                    String.valueOf(priceRange[0]));
+        }
+        if (priceRange[1] >= 0) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_MAX_PRICE,
+                    String.valueOf(priceRange[1]));
+        }
+        if (mInStockOnly) {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_IN_STOCK, "true");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the page key of the given book in the current sort order.
+     */
+    private String getPageKey(BookListItem item) {
+        switch (mSort) {
+            case BookContract.SORT_PRICE:
+                return BookEntry.buildPageKey(item.price, item.name, item.id);
+            case BookContract.SORT_QUANTITY:
+                return BookEntry.buildPageKey(item.quantity, item.name, item.id);
+            case BookContract.SORT_GENRE:
+                return BookEntry.buildPageKey(item.genre, item.name, item.id);
+            default:
+                return BookEntry.buildPageKey(item.name, item.id);
+        }
+    }
+
+    /**
+     * Load the catalog again from the first page, after its sort order or filters changed.
+     */
+    private void reloadCatalog() {
+        LoaderManager loaderManager = getLoaderManager();
+        for (int page = 0; page < mPages.size(); page++) {
+            loaderManager.destroyLoader(BOOK_LOADER + page);
+        }
+        mPages.clear();
+        mPageStartKeys.clear();
+        mChangedBooks.clear();
+        mCatalogGeneration++;
+        showLoadedPages();
+        loadPage(null);
+    }
+
+    /**
+     * Load every page that has been started again, keeping the books they show until the new
+     * ones have loaded. This is only needed when a book moves to another place in the catalog.
+     */
+    private void reloadLoadedPages() {
+        for (int page = 0; page < mPages.size(); page++) {
+            getLoaderManager().getLoader(BOOK_LOADER + page).onContentChanged();
+        }
+    }
+
+    /**
+     * Returns the ID of the book if the given URI is the content URI of a single book, as a
+     * change to just that book is notified on, or -1 if it's any other URI.
+     */
+    private static long getBookId(Uri uri) {
+        if (uri == null || !BookContract.CONTENT_AUTHORITY.equals(uri.getAuthority())) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !BookContract.PATH_BOOKS.equals(segments.get(0))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(segments.get(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Fetch the book with the given ID again after it changed on its own. Only that book is
+     * read, with the sort order and filters of the catalog and from the part of the catalog that
+     * has been loaded, so it is found only if the list should show it, see
+     * {@link #onBookFetched}.
+     */
+    private void onBookChanged(long id) {
+        // The list ends where the first page that is still loading starts, or at the last book
+        // loaded if there are more books after it, or else at the end of the catalog.
+        int loadedPages = mPages.indexOf(null);
+        String untilKey;
+        if (loadedPages == 0) {
+            // The first page is still loading, and will show the book as it is now.
+            return;
+        } else if (loadedPages > 0) {
+            untilKey = mPageStartKeys.get(loadedPages);
+        } else {
+            List<BookListItem> lastItems = mPages.get(mPages.size() - 1).getItems();
+            untilKey = lastItems.size() < PAGE_SIZE ? null
+                    : getPageKey(lastItems.get(lastItems.size() - 1));
+        }
 
-        // Kick off the loader.
-        getLoaderManager().initLoader(BOOK_LOADER,null, this);
+        // The cookie holds the ID of the book and when it was asked for.
+        Uri loadedUri = BookEntry.buildPageUri(buildCatalogUri(), null, untilKey, 0);
+        mBookQueryHandler.startQuery(mCatalogGeneration, new long[] {id, System.nanoTime()},
+                loadedUri, CatalogPageLoader.PROJECTION, BookEntry._ID + "=?",
+                new String[] {String.valueOf(id)}, null);
+    }
+
+    /**
+     * Show the changed book with the given ID, which the given cursor holds if the list should
+     * show it, or is empty if not. If the book keeps its place in the list, only its row is
+     * changed, or removed if it has left the catalog. If it has moved, or joined the list, the
+     * pages are loaded again as a whole.
+     *
+     * @param requestedAt When the book was asked for, in {@link System#nanoTime()}.
+     */
+    private void onBookFetched(int generation, long id, long requestedAt, Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+        CatalogPageLoader.Page fetched = new CatalogPageLoader.Page(cursor, requestedAt);
+        fetched.close();
+        if (generation != mCatalogGeneration) {
+            return;
+        }
+        BookListItem book = fetched.getItems().isEmpty() ? null : fetched.getItems().get(0);
+
+        // Find the book in the pages, along with when its page started loading.
+        BookListItem shown = null;
+        long pageLoadStartedAt = Long.MIN_VALUE;
+        for (CatalogPageLoader.Page page : mPages) {
+            if (page == null) {
+                break;
+            }
+            for (BookListItem item : page.getItems()) {
+                if (item.id == id) {
+                    shown = mChangedBooks.contains(id) ? mChangedBooks.get(id) : item;
+                    pageLoadStartedAt = page.getLoadStartedAt();
+                }
+            }
+        }
+
+        if (requestedAt < pageLoadStartedAt) {
+            // The page started loading after the book was asked for, so it has the book as it
+            // is now, or newer. Any change since then is fetched again on its own.
+            return;
+        }
+        if (shown == null && book == null) {
+            // The list doesn't show the book, and still shouldn't.
+            return;
+        }
+        if (shown == null || (book != null && !getPageKey(shown).equals(getPageKey(book)))) {
+            reloadLoadedPages();
+            return;
+        }
+        mChangedBooks.put(id, book, requestedAt);
+        showLoadedPages();
+    }
+
+    /**
+     * Ask the user which genres to show in the catalog. Picking none shows every genre.
+     */
+    private void showGenresDialog() {
+        String[] names = new String[GENRES.length];
+        final boolean[] checked = new boolean[GENRES.length];
+        for (int i = 0; i < GENRES.length; i++) {
+            names[i] = getGenreName(GENRES[i]);
+            checked[i] = mGenres.contains(GENRES[i]);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_genres_title);
+        builder.setMultiChoiceItems(names, checked,
+                new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                });
+        builder.setPositiveButton(R.string.filter_genres_apply,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        ArrayList<Integer> genres = new ArrayList<>();
+                        for (int i = 0; i < GENRES.length; i++) {
+                            if (checked[i]) {
+                                genres.add(GENRES[i]);
+                            }
+                        }
+                        mGenres = genres;
+                        reloadCatalog();
+                    }
+                });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
+
+    /**
+     * Start the loader for a new page of books, which follows the book with the given page key.
+     */
+    private void loadPage(String afterKey) {
+        int page = mPageStartKeys.size();
+        mPageStartKeys.add(afterKey);
+        mPages.add(null);
+
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_PAGE_URI,
+                BookEntry.buildPageUri(buildCatalogUri(), afterKey, null, PAGE_SIZE));
+        getLoaderManager().initLoader(BOOK_LOADER + page, args, this);
+    }
+
+    /**
+     * Load the page of books after the last one, if the last page has finished loading and was
+     * full (otherwise there are no more books to load).
+     */
+    private void loadNextPage() {
+        // The search results aren't paged.
+        if (!mSearchText.isEmpty()) {
+            return;
+        }
+
+        int lastPage = mPages.size() - 1;
+        CatalogPageLoader.Page lastPageCursor = mPages.get(lastPage);
+        if (lastPageCursor == null || lastPageCursor.getItems().size() < PAGE_SIZE) {
+            return;
+        }
+
+        // The last book of the page is where the next page starts.
+        List<BookListItem> lastPageItems = lastPageCursor.getItems();
+        BookListItem lastItem = lastPageItems.get(lastPageItems.size() - 1);
+        String lastKey = getPageKey(lastItem);
+
+        // From now on the last page ends at that book, so when it reloads after a change it
+        // can't lose books to the next page or load books that the next page also has.
+        // Changing the URI doesn't reload the page straight away.
+        CursorLoader lastLoader =
+                (CursorLoader) getLoaderManager().<Cursor>getLoader(BOOK_LOADER + lastPage);
+        lastLoader.setUri(BookEntry.buildPageUri(buildCatalogUri(), mPageStartKeys.get(lastPage),
+                lastKey, 0));
+
+        loadPage(lastKey);
+    }
+
+    /**
+     * Show all the pages that have been loaded so far, as one list.
+     */
+    private void showLoadedPages() {
+        // While searching, the list shows the books found instead.
+        if (mSearchResults != null) {
+            mBookAdapter.swapItems(mSearchResults.getItems());
+            return;
+        }
+
+        mBookAdapter.swapItems(getLoadedBooks());
+    }
+
+    /**
+     * Returns the books of all the pages that have been loaded so far, as one list, with the
+     * books that changed since in place of the books they were loaded as.
+     */
+    private ArrayList<BookListItem> getLoadedBooks() {
+        ArrayList<BookListItem> items = new ArrayList<>();
+        for (CatalogPageLoader.Page page : mPages) {
+            if (page == null) {
+                break;
+            }
+            for (BookListItem item : page.getItems()) {
+                if (!mChangedBooks.contains(item.id)) {
+                    items.add(item);
+                } else if (mChangedBooks.get(item.id) != null) {
+                    items.add(mChangedBooks.get(item.id));
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Show the stock summary of each genre that has books, and of all genres together, from the
+     * given summary cursor. There is a row for each genre at most, so this is cheap to do on the
+     * main thread.
+     */
+    private void showSummary(Cursor cursor) {
+        if (cursor == null || cursor.getCount() == 0) {
+            mSummaryTextView.setVisibility(View.GONE);
+            return;
+        }
+
+        NumberFormat priceFormat = NumberFormat.getCurrencyInstance();
+        StringBuilder summary = new StringBuilder();
+        int totalTitles = 0;
+        int totalUnits = 0;
+        long totalValue = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            int titles = cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_TITLE_COUNT));
+            int units = cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_UNIT_COUNT));
+            long value = SummaryEntry.getStockValue(cursor);
+            int genre = cursor.getInt(cursor.getColumnIndex(SummaryEntry.COLUMN_GENRE));
+            summary.append('\n').append(getString(R.string.summary_line, getGenreName(genre),
+                    titles, units, priceFormat.format(BookEntry.toAmount(value))));
+            totalTitles += titles;
+            totalUnits += units;
+            totalValue += value;
+        }
+        summary.insert(0, getString(R.string.summary_line,
+                getString(R.string.summary_all_genres), totalTitles, totalUnits,
+                priceFormat.format(BookEntry.toAmount(totalValue))));
+
+        mSummaryTextView.setText(summary);
+        mSummaryTextView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Returns the display name of the given genre.
+     */
+    private String getGenreName(int genre) {
+        switch (genre) {
+            case BookEntry.GENRE_FANTASY:
+                return getString(R.string.genre_fantasy);
+            case BookEntry.GENRE_SCI_FI:
+                return getString(R.string.genre_sci_fi);
+            case BookEntry.GENRE_MYSTERY:
+                return getString(R.string.genre_mystery);
+            case BookEntry.GENRE_ROMANCE:
+                return getString(R.string.genre_romance);
+            case BookEntry.GENRE_HORROR:
+                return getString(R.string.genre_horror);
+            case BookEntry.GENRE_ACTION_AND_ADVENTURE:
+                return getString(R.string.genre_action_and_adventure);
+            case BookEntry.GENRE_DRAMA:
+                return getString(R.string.genre_drama);
+            default:
+                return getString(R.string.genre_unknown);
+        }
     }
 
     private void insertBook () {
@@ -88,7 +747,7 @@ public class CatalogActivity extends AppCompatActivity implements
         ContentValues values = new ContentValues();
         values.put(BookEntry.COLUMN_PRODUCT_NAME, "Wyrd Sisters");
         values.put(BookEntry.COLUMN_PRODUCT_GENRE, BookEntry.GENRE_FANTASY);
-        values.put(BookEntry.COLUMN_PRODUCT_PRICE, 5.99);
+        BookEntry.putPrice(values, 599);
         values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, 15);
         values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Waterstones");
         values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, "0208555555");
@@ -106,22 +765,109 @@ public class CatalogActivity extends AppCompatActivity implements
         Log.v("CatalogActivity", rowsDeleted + " rows deleted from the pet database");
     }
 
+    /**
+     * Ask the user for a CSV file to import books from. The import starts once the file has been
+     * picked, see {@link #onActivityResult(int, int, Intent)}.
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("text/*");
+        startActivityForResult(intent, REQUEST_IMPORT_FILE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_IMPORT_FILE && resultCode == RESULT_OK && data != null
+                && data.getData() != null) {
+            // Import in the background. The catalog is notified as each chunk of books commits.
+            BookImportService.start(this, data.getData());
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search as the user types, see {@link #onSearchTextChanged}.
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        if (!mSearchText.isEmpty()) {
+            // Show the text that was being searched for before the activity was recreated.
+            searchItem.expandActionView();
+            searchView.setQuery(mSearchText, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The search is already running or about to, so just hide the keyboard.
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // Closing the search view clears the text, which goes back to the catalog.
+                onSearchTextChanged(newText);
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Tick the sort order and filters the catalog is shown with.
+        for (int i = 0; i < SORTS.length; i++) {
+            menu.findItem(SORT_ITEMS[i]).setChecked(SORTS[i].equals(mSort));
+        }
+        menu.findItem(PRICE_RANGE_ITEMS[mPriceRange]).setChecked(true);
+        menu.findItem(R.id.action_filter_in_stock).setChecked(mInStockOnly);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        // Respond to a click on one of the sort orders or price ranges, by loading the catalog
+        // again with it.
+        for (int i = 0; i < SORT_ITEMS.length; i++) {
+            if (item.getItemId() == SORT_ITEMS[i]) {
+                mSort = SORTS[i];
+                reloadCatalog();
+                return true;
+            }
+        }
+        for (int i = 0; i < PRICE_RANGE_ITEMS.length; i++) {
+            if (item.getItemId() == PRICE_RANGE_ITEMS[i]) {
+                mPriceRange = i;
+                reloadCatalog();
+                return true;
+            }
+        }
+
         // User clicked on a menu option in the app bar overflow menu.
         switch (item.getItemId()) {
             // Respond to a click on the "Insert dummy data" menu option.
             case R.id.action_insert_dummy_data:
                 insertBook();
                 return true;
+            // Respond to a click on the "Import books" menu option.
+            case R.id.action_import_books:
+                pickImportFile();
+                return true;
+            // Respond to a click on the "Genres" filter option.
+            case R.id.action_filter_genres:
+                showGenresDialog();
+                return true;
+            // Respond to a click on the "In stock only" filter option.
+            case R.id.action_filter_in_stock:
+                mInStockOnly = !mInStockOnly;
+                reloadCatalog();
+                return true;
                 // Respond to a click on the "Delete all entries" menu option.
             case R.id.action_delete_all_entries:
                 // Delete all books from the database.
@@ -133,31 +879,54 @@ public class CatalogActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = new String[]{
-                BookEntry._ID,
-                BookEntry.COLUMN_PRODUCT_NAME,
-                BookEntry.COLUMN_PRODUCT_PRICE,
-                BookEntry.COLUMN_PRODUCT_QUANTITY};
-
-        // This loader will execute the ContentProvider's query method on a background thread.
-        return new CursorLoader(this, // Parent activity context.
-                BookEntry.CONTENT_URI,        // Provider content URI to query.
-                projection,                   // Columns to include in the resulting Cursor.
-                null,                // No selection clause.
-                null,            // No selection arguments.
-                null);              // Default sort order.
+        if (id == SUMMARY_LOADER) {
+            // The summary only lists the genres that have books.
+            return new CursorLoader(this, SummaryEntry.CONTENT_URI, SUMMARY_PROJECTION,
+                    SummaryEntry.COLUMN_TITLE_COUNT + " > 0", null, SummaryEntry.COLUMN_GENRE);
+        }
+
+        // This loader will execute the ContentProvider's query method on a background thread,
+        // and read the page, or the search results, into list items there too.
+        return new CatalogPageLoader(this, (Uri) args.getParcelable(ARG_PAGE_URI));
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@link BookCursorAdapter} with this new cursor containing updated book data.
-        mCursorAdapter.swapCursor(data);
+        if (loader.getId() == SUMMARY_LOADER) {
+            showSummary(data);
+            return;
+        }
+        if (loader.getId() == SEARCH_LOADER) {
+            mSearchResults = (CatalogPageLoader.Page) data;
+            showLoadedPages();
+            return;
+        }
+
+        // Update {@link BookAdapter} with all the pages, including this new page containing
+        // updated book data. The page read its books after the changed books that were asked for
+        // before it started loading, so those aren't needed for them anymore.
+        CatalogPageLoader.Page page = (CatalogPageLoader.Page) data;
+        mPages.set(loader.getId() - BOOK_LOADER, page);
+        if (page != null) {
+            mChangedBooks.onPageLoaded(page.getItems(), page.getLoadStartedAt());
+        }
+        showLoadedPages();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            showSummary(null);
+            return;
+        }
+        if (loader.getId() == SEARCH_LOADER) {
+            mSearchResults = null;
+            showLoadedPages();
+            return;
+        }
+
         // Callback called when the data needs to be deleted.
-        mCursorAdapter.swapCursor(null);
+        mPages.set(loader.getId() - BOOK_LOADER, null);
+        showLoadedPages();
     }
 }
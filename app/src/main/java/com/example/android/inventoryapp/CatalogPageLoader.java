@@ -0,0 +1,98 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link CatalogPageLoader} loads one page of books for the catalog list. On top of what a
+ * {@link CursorLoader} does, it reads every row of the page into a {@link BookListItem} while it
+ * is still on the background thread, so the list never reads the cursor on the main thread.
+ */
+public class CatalogPageLoader extends CursorLoader {
+
+    /** The columns the catalog list shows. */
+    static final String[] PROJECTION = new String[]{
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_GENRE,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY};
+
+    /**
+     * Constructs a new {@link CatalogPageLoader}.
+     *
+     * @param context The context.
+     * @param pageUri The content URI of the page of books to load.
+     */
+    public CatalogPageLoader(Context context, Uri pageUri) {
+        super(context, pageUri, PROJECTION, null, null, null);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        // Stamp the page before querying, so it is known to hold every change made before then.
+        long startedAt = System.nanoTime();
+        Cursor cursor = super.loadInBackground();
+        return cursor == null ? null : new Page(cursor, startedAt);
+    }
+
+    /**
+     * {@link Page} is the cursor for a page of books, along with the {@link BookListItem} read
+     * from each of its rows.
+     */
+    public static class Page extends CursorWrapper {
+
+        /** The books in the page, in the same order as the rows of the cursor. */
+        private final List<BookListItem> mItems;
+
+        /** When the page started loading, in {@link System#nanoTime()}. */
+        private final long mLoadStartedAt;
+
+        Page(Cursor cursor, long loadStartedAt) {
+            super(cursor);
+            mLoadStartedAt = loadStartedAt;
+
+            // Find the columns once for the whole page, then read every row.
+            int idColumnIndex = cursor.getColumnIndex(BookEntry._ID);
+            int nameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
+            int genreColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_GENRE);
+            int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICE);
+            int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_QUANTITY);
+
+            ArrayList<BookListItem> items = new ArrayList<>(cursor.getCount());
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                items.add(new BookListItem(cursor.getLong(idColumnIndex),
+                        cursor.getString(nameColumnIndex),
+                        cursor.getInt(genreColumnIndex),
+                        cursor.getLong(priceColumnIndex),
+                        cursor.getInt(quantityColumnIndex)));
+            }
+            mItems = Collections.unmodifiableList(items);
+        }
+
+        /**
+         * Returns the books in the page, in catalog order.
+         */
+        public List<BookListItem> getItems() {
+            return mItems;
+        }
+
+        /**
+         * Returns when the page started loading, in {@link System#nanoTime()}. The page holds
+         * every change made to its books before then.
+         */
+        public long getLoadStartedAt() {
+            return mLoadStartedAt;
+        }
+    }
+}
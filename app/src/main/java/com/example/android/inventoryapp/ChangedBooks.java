@@ -0,0 +1,83 @@
+package com.example.android.inventoryapp;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * {@link ChangedBooks} holds the books of the catalog list that changed on their own since the
+ * page they are in was loaded, each as it was fetched again by itself. Every book is stamped with
+ * when it was asked for, on the {@link System#nanoTime()} clock that the page loads are stamped
+ * with too, so a page that loads after a book changed can't hide the change behind older values.
+ */
+final class ChangedBooks {
+
+    /** A changed book, along with when it was asked for. */
+    private static final class Change {
+
+        /** The book as fetched, or null if it has left the catalog. */
+        final BookListItem book;
+
+        /** When the book was asked for, in {@link System#nanoTime()}. */
+        final long requestedAt;
+
+        Change(BookListItem book, long requestedAt) {
+            this.book = book;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    /** The changed books, by ID. */
+    private final HashMap<Long, Change> mChanges = new HashMap<>();
+
+    /**
+     * Remember the book with the given ID as it was fetched, or as having left the catalog if the
+     * book is null. A book asked for before the one already remembered is older, so it's ignored.
+     *
+     * @param requestedAt When the book was asked for, in {@link System#nanoTime()}.
+     */
+    void put(long id, BookListItem book, long requestedAt) {
+        Change change = mChanges.get(id);
+        if (change == null || change.requestedAt <= requestedAt) {
+            mChanges.put(id, new Change(book, requestedAt));
+        }
+    }
+
+    /**
+     * Returns whether the book with the given ID changed since its page was loaded.
+     */
+    boolean contains(long id) {
+        return mChanges.containsKey(id);
+    }
+
+    /**
+     * Returns the book with the given ID as it changed, or null if it has left the catalog.
+     */
+    BookListItem get(long id) {
+        Change change = mChanges.get(id);
+        return change == null ? null : change.book;
+    }
+
+    /**
+     * Forget the changes to the given books, which a page just loaded, that were asked for before
+     * the page started loading, as the page read them later. A change asked for after that may
+     * have been read after the page too, so it is kept until a later page load.
+     *
+     * @param items         The books in the page.
+     * @param loadStartedAt When the page started loading, in {@link System#nanoTime()}.
+     */
+    void onPageLoaded(List<BookListItem> items, long loadStartedAt) {
+        for (BookListItem item : items) {
+            Change change = mChanges.get(item.id);
+            if (change != null && change.requestedAt < loadStartedAt) {
+                mChanges.remove(item.id);
+            }
+        }
+    }
+
+    /**
+     * Forget all the changed books.
+     */
+    void clear() {
+        mChanges.clear();
+    }
+}
@@ -2,7 +2,6 @@ package com.example.android.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
@@ -220,7 +219,7 @@ public class DetailedViewActivity extends AppCompatActivity implements LoaderMan
             // Find and read the book attributes from the Cursor for the current book.
             String name = cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME));
             String genre = cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_GENRE));
-            double price = cursor.getDouble(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICE));
+            long price = BookEntry.getPrice(cursor);
             String supplierName = cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
             String supplierPhone = cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE));
             final int quantity = cursor.getInt(cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_QUANTITY));
@@ -242,7 +241,7 @@ public class DetailedViewActivity extends AppCompatActivity implements LoaderMan
             // Update the views on the screen with the values from the database.
             mBookNameTextView.setText(name);
             mGenreTextView.setText(genre);
-            mPriceTextView.setText(format.format(Double.valueOf(price)));
+            mPriceTextView.setText(format.format(BookEntry.toAmount(price)));
             mQuantityTextView.setText(Integer.toString(quantity));
             mSupplierNameTextView.setText(supplierName);
             mSupplierPhoneTextView.setText(supplierPhone);
@@ -251,50 +250,37 @@ public class DetailedViewActivity extends AppCompatActivity implements LoaderMan
                 @Override
                 public void onClick(View v) {
                     // This increases the items' stock quantity by one.
-                    int bookQuantity = quantity + 1;
-                    // This sets up the values to change.
-                    ContentValues values = new ContentValues();
-                    // This changes the values.
-                    values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, bookQuantity);
-                    // This points to which row needs changing.
-                    String selection = BookEntry._ID + "+?";
-                    // This points to which database item on the list to change.
-                    Uri currentBook = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
-                    // This points to which column needs changing.
-                    String[] selectionArgs = new String[]{String.valueOf(id)};
-                    //This updates the database via the content resolver.
-                    context.getContentResolver().update(currentBook, values, selection, selectionArgs);
-
+                    adjustQuantity(context, id, 1);
                 }
             });
 
             mDecreaseButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    // If there is no more stock display toast message else decrease quantity by 1.
-                    if (quantity == 0) {
+                    // This decreases the items' stock quantity by one. If there is no more
+                    // stock, the adjustment is rejected and a toast message is displayed.
+                    if (!adjustQuantity(context, id, -1)) {
                         Toast.makeText(context, R.string.no_stock, Toast.LENGTH_SHORT).show();
-                    } else {
-                        // This decreases the items' stock quantity.
-                        int bookQuantity = quantity - 1;
-                        // This sets up the values to change.
-                        ContentValues values = new ContentValues();
-                        // This changes the values.
-                        values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, bookQuantity);
-                        // This points to which row needs changing.
-                        String selection = BookEntry._ID + "+?";
-                        // This points to which database item on the list to change.
-                        Uri currentBook = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
-                        // This points to which column needs changing.
-                        String[] selectionArgs = new String[]{String.valueOf(id)};
-                        //This updates the database via the content resolver.
-                        context.getContentResolver().update(currentBook, values, selection, selectionArgs);
                     }
                 }
             });
         }
     }
 
+    /**
+     * Adjust the stock quantity of the book with the given ID by the given delta. Return whether
+     * the quantity was changed (it isn't if it would drop below zero).
+     */
+    private static boolean adjustQuantity(Context context, int id, int delta) {
+        // This sets up the change to make.
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.ADJUST_DELTA, delta);
+        // This points to the stock adjustment URI of the book to change.
+        Uri adjustBook = BookEntry.buildAdjustUri(id);
+        // This updates the database via the content resolver.
+        return context.getContentResolver().update(adjustBook, values, null, null) != 0;
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
 
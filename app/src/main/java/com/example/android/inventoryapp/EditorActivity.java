@@ -26,6 +26,7 @@ import android.widget.Spinner;
 import android.widget.Toast;
 
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookValidator;
 
 
 /**
@@ -58,6 +59,11 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      */
     private EditText mQuantityEditText;
 
+    /**
+     * EditText field to enter the stock quantity at which the product is reordered.
+     */
+    private EditText mReorderThresholdEditText;
+
     /**
      * EditText field to enter the product's supplier name.
      */
@@ -135,6 +141,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mBookNameEditText = findViewById(R.id.edit_book_name);
         mPriceEditText = findViewById(R.id.edit_book_price);
         mQuantityEditText = findViewById(R.id.edit_book_quantity);
+        mReorderThresholdEditText = findViewById(R.id.edit_book_reorder_threshold);
         mSupplierNameEditText = findViewById(R.id.edit_supplier_name);
         mSupplierPhoneEditText = findViewById(R.id.edit_book_supplier_phone);
         mGenreSpinner = findViewById(R.id.spinner_genre);
@@ -145,6 +152,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mBookNameEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierPhoneEditText.setOnTouchListener(mTouchListener);
         mGenreSpinner.setOnTouchListener(mTouchListener);
@@ -209,6 +217,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         String bookNameString = mBookNameEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
+        String reorderThresholdString = mReorderThresholdEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierPhoneString = mSupplierPhoneEditText.getText().toString().trim();
 
@@ -216,6 +225,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // are blank.
         if (mCurrentBookUri == null && TextUtils.isEmpty(bookNameString) &&
                 TextUtils.isEmpty(priceString) && TextUtils.isEmpty(quantityString) &&
+                TextUtils.isEmpty(reorderThresholdString) &&
                 TextUtils.isEmpty(supplierNameString) && TextUtils.isEmpty(supplierPhoneString) &&
                 mGenre == BookEntry.GENRE_UNKNOWN) {
             // Since no fields were modified, we can return early without creating a new book.
@@ -227,57 +237,23 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // field-is-required-before-moving-on-to-another-activity
         // Author Haresh Chaudhary on 18 July 2012
         // Also thanks to @Oya and @ula.d on Slack for their help.
-        if (TextUtils.isEmpty(bookNameString)) {
-            Toast.makeText(this, R.string.provider_requires_name, Toast.LENGTH_SHORT).show();
-            mBookNameEditText.setError("Book name is required.");
-            return;
-        }
-
-        if (TextUtils.isEmpty(priceString)) {
-            Toast.makeText(this, R.string.provider_requires_price, Toast.LENGTH_SHORT).show();
-            mPriceEditText.setError("Book price is required.");
-            return;
-        }
-
-        if (TextUtils.isEmpty(quantityString)) {
-            Toast.makeText(this, R.string.provider_requires_quantity, Toast.LENGTH_SHORT).show();
-            mQuantityEditText.setError("Book quantity is required.");
-            return;
-        }
-
-        if (TextUtils.isEmpty(supplierNameString)) {
-            Toast.makeText(this, R.string.provider_requires_supplier_name, Toast.LENGTH_SHORT).show();
-            mSupplierNameEditText.setError("Book supplier name is required.");
-            return;
-        }
-
-        if (TextUtils.isEmpty(supplierPhoneString)) {
-            Toast.makeText(this, R.string.provider_requires_supplier_phone, Toast.LENGTH_SHORT).show();
-            mSupplierPhoneEditText.setError("Book supplier phone is required.");
+        // The rules themselves are shared with the CSV import, see {@link BookValidator}.
+        int error = BookValidator.validate(bookNameString, mGenre, priceString, quantityString,
+                reorderThresholdString, supplierNameString, supplierPhoneString);
+        if (error != 0) {
+            Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+            EditText field = getFieldFor(error);
+            if (field != null) {
+                field.setError(getString(error));
+            }
             return;
         } else {
 
             // Create a ContentValues object where column names are the keys,
             // and book attributes from the editor are the values.
-            ContentValues values = new ContentValues();
-            values.put(BookEntry.COLUMN_PRODUCT_NAME, bookNameString);
-            values.put(BookEntry.COLUMN_PRODUCT_GENRE, mGenre);
-            // If the price is not provided by the user, don't try to parse the string into
-            // an integer value. Use 0 by default.
-            double price = 0;
-            if (!TextUtils.isEmpty(priceString)) {
-                price = Double.parseDouble(priceString);
-            }
-            values.put(BookEntry.COLUMN_PRODUCT_PRICE, price);
-            // If the quantity is not provided by the user, don't try to parse the string into an
-            // integer value. Use 0 by default.
-            int quantity = 0;
-            if (!TextUtils.isEmpty(quantityString)) {
-                quantity = Integer.parseInt(quantityString);
-            }
-            values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, quantity);
-            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierNameString);
-            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, supplierPhoneString);
+            ContentValues values = BookValidator.toContentValues(bookNameString, mGenre,
+                    priceString, quantityString, reorderThresholdString, supplierNameString,
+                    supplierPhoneString);
 
             // Determine if this is a new or existing book by checking if the mCurrentBookUri
             // is null or not.
@@ -317,6 +293,29 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
     }
 
+    /**
+     * Returns the input field that the given validation message is about, or null if the
+     * message isn't about a single field.
+     */
+    private EditText getFieldFor(int error) {
+        switch (error) {
+            case R.string.provider_requires_name:
+                return mBookNameEditText;
+            case R.string.provider_requires_price:
+                return mPriceEditText;
+            case R.string.provider_requires_quantity:
+                return mQuantityEditText;
+            case R.string.provider_requires_reorder_threshold:
+                return mReorderThresholdEditText;
+            case R.string.provider_requires_supplier_name:
+                return mSupplierNameEditText;
+            case R.string.provider_requires_supplier_phone:
+                return mSupplierPhoneEditText;
+            default:
+                return null;
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_editor.xml file.
@@ -418,7 +417,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 BookEntry.COLUMN_PRODUCT_PRICE,
                 BookEntry.COLUMN_PRODUCT_QUANTITY,
                 BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
-                BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE};
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE,
+                BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD};
 
         // This loader will execute the ContentProvider's query method on a background thread.
         return new CursorLoader(this, // Parent activity context.
@@ -529,23 +529,26 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             // Find the columns of book attributes that we're interested in.
             int nameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
             int genreColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_GENRE);
-            int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICE);
             int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_QUANTITY);
             int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
             int supplierPhoneColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+            int reorderThresholdColumnIndex =
+                    cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
 
             // Extract out the value from the Cursor for the given column index.
             String name = cursor.getString(nameColumnIndex);
             int genre = cursor.getInt(genreColumnIndex);
-            double price = cursor.getDouble(priceColumnIndex);
+            long price = BookEntry.getPrice(cursor);
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
             String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
+            int reorderThreshold = cursor.getInt(reorderThresholdColumnIndex);
 
             // Update the views on the screen with the values from the database.
             mBookNameEditText.setText(name);
-            mPriceEditText.setText(Double.toString(price));
+            mPriceEditText.setText(BookEntry.toAmount(price).toPlainString());
             mQuantityEditText.setText(Integer.toString(quantity));
+            mReorderThresholdEditText.setText(Integer.toString(reorderThreshold));
             mSupplierNameEditText.setText(supplierName);
             mSupplierPhoneEditText.setText(supplierPhone);
 
@@ -589,6 +592,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mGenreSpinner.setSelection(0); // Select Unknown genre
         mPriceEditText.setText("");
         mQuantityEditText.setText("");
+        mReorderThresholdEditText.setText("");
         mSupplierNameEditText.setText("");
         mSupplierPhoneEditText.setText("");
     }
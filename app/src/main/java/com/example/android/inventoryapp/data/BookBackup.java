@@ -0,0 +1,261 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backs the book store database up to a compressed file while the app keeps running, and
+ * restores it from one.
+ *
+ * Copying the database file while a sale is being written could catch it half way through. A
+ * backup holds the write lock only while the database file and its write-ahead log are copied
+ * as they are, which is a plain file copy and quick. Readers carry on throughout, and writers
+ * wait only for the copy. The copy is then opened on its own, the log is folded into it, and it
+ * is compressed into the backup, all without holding any lock on the live database.
+ *
+ * A restore checks that the backup is a sound database of a schema version this app can open,
+ * before it takes the place of the live database. An older schema is upgraded as usual the next
+ * time the database is opened.
+ */
+class BookBackup {
+
+    /** Tag for the log messages. */
+    private static final String LOG_TAG = BookBackup.class.getSimpleName();
+
+    /** Size of the buffers the files are copied and compressed through. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Suffixes SQLite gives to the write-ahead log, its index, and the rollback journal. */
+    private static final String[] JOURNAL_SUFFIXES = {"-wal", "-shm", "-journal"};
+
+    /** Suffix of the copy of the live database a backup is made from. */
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    /** Suffix of the backup being decompressed for a restore. */
+    private static final String RESTORE_SUFFIX = ".restore";
+
+    /** Suffix of a backup file while it is being written. */
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    /** Database helper of the books. */
+    private final BookDbHelper mDbHelper;
+
+    /**
+     * Constructs a new {@link BookBackup}.
+     *
+     * @param dbHelper Database helper of the books.
+     */
+    BookBackup(BookDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Back the database up to the given file, compressed with gzip. The file is only replaced
+     * once the whole backup has been written. Return the time writers were held up for, under
+     * {@link BookContract#KEY_SNAPSHOT_MILLIS}, the size of the database, under
+     * {@link BookContract#KEY_SNAPSHOT_BYTES}, the size of the backup, under
+     * {@link BookContract#KEY_BACKUP_BYTES}, and the time the whole backup took, under
+     * {@link BookContract#KEY_BACKUP_MILLIS}.
+     */
+    Bundle backup(File destination) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        File databaseFile = new File(database.getPath());
+        File snapshot = new File(databaseFile.getPath() + SNAPSHOT_SUFFIX);
+        File partial = new File(destination.getPath() + PARTIAL_SUFFIX);
+        try {
+            // Move what can be moved out of the log first, so there is less to copy under lock.
+            // This doesn't wait for readers, and whatever is left behind is copied with the log.
+            Cursor checkpoint = database.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+            checkpoint.moveToFirst();
+            checkpoint.close();
+
+            // With the write lock held nothing can commit, or checkpoint on commit, so the file
+            // and the log are a consistent pair. Readers aren't held up by the lock.
+            long snapshotStart = SystemClock.elapsedRealtime();
+            database.beginTransactionNonExclusive();
+            try {
+                deleteDatabaseFiles(snapshot);
+                copy(databaseFile, snapshot);
+                File log = new File(databaseFile.getPath() + JOURNAL_SUFFIXES[0]);
+                if (log.exists()) {
+                    copy(log, new File(snapshot.getPath() + JOURNAL_SUFFIXES[0]));
+                }
+            } finally {
+                database.endTransaction();
+            }
+            long snapshotMillis = SystemClock.elapsedRealtime() - snapshotStart;
+
+            // Opening the copy replays its log, and leaving WAL mode folds the log into the file,
+            // so the backup is a single file.
+            SQLiteDatabase copy = SQLiteDatabase.openDatabase(snapshot.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE);
+            try {
+                Cursor journalMode = copy.rawQuery("PRAGMA journal_mode = DELETE", null);
+                journalMode.moveToFirst();
+                journalMode.close();
+            } finally {
+                copy.close();
+            }
+
+            InputStream in = new FileInputStream(snapshot);
+            try {
+                OutputStream out = new GZIPOutputStream(new FileOutputStream(partial), BUFFER_SIZE);
+                try {
+                    copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            if (!partial.renameTo(destination)) {
+                throw new IOException("Cannot write backup to " + destination);
+            }
+
+            Bundle result = new Bundle();
+            result.putLong(BookContract.KEY_SNAPSHOT_MILLIS, snapshotMillis);
+            result.putLong(BookContract.KEY_SNAPSHOT_BYTES, snapshot.length());
+            result.putLong(BookContract.KEY_BACKUP_BYTES, destination.length());
+            result.putLong(BookContract.KEY_BACKUP_MILLIS, SystemClock.elapsedRealtime() - start);
+            Log.i(LOG_TAG, "Backed up to " + destination + ": " + result);
+            return result;
+        } finally {
+            deleteDatabaseFiles(snapshot);
+            partial.delete();
+        }
+    }
+
+    /**
+     * Replace the database with the one backed up to the given file. The backup is checked
+     * before anything is replaced, and the live database is left as it is if the check fails.
+     * The database is closed for the swap, so this shouldn't run while other work is using it.
+     * Return the schema version of the backup, under {@link BookContract#KEY_SCHEMA_VERSION},
+     * and the time the restore took, under {@link BookContract#KEY_RESTORE_MILLIS}.
+     *
+     * @throws IllegalArgumentException if the backup isn't a sound database of a schema version
+     *                                  this app can open.
+     */
+    Bundle restore(File source) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        File databaseFile = new File(mDbHelper.getReadableDatabase().getPath());
+        File restored = new File(databaseFile.getPath() + RESTORE_SUFFIX);
+        try {
+            deleteDatabaseFiles(restored);
+            InputStream in = new GZIPInputStream(new FileInputStream(source), BUFFER_SIZE);
+            try {
+                OutputStream out = new FileOutputStream(restored);
+                try {
+                    copy(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            int version = checkBackup(restored);
+
+            // Close the live database and remove its log before the swap, or SQLite would play
+            // the old log back onto the restored file.
+            mDbHelper.close();
+            deleteDatabaseFiles(databaseFile);
+            if (!restored.renameTo(databaseFile)) {
+                throw new IOException("Cannot restore backup to " + databaseFile);
+            }
+
+            // Open it again now, so an older schema is upgraded here rather than by the next query.
+            mDbHelper.getWritableDatabase();
+
+            Bundle result = new Bundle();
+            result.putInt(BookContract.KEY_SCHEMA_VERSION, version);
+            result.putLong(BookContract.KEY_RESTORE_MILLIS, SystemClock.elapsedRealtime() - start);
+            Log.i(LOG_TAG, "Restored from " + source + ": " + result);
+            return result;
+        } finally {
+            deleteDatabaseFiles(restored);
+        }
+    }
+
+    /**
+     * Returns the schema version of the database in the given file, after checking that it can be
+     * read and that this app knows how to open its schema.
+     */
+    private static int checkBackup(File file) {
+        SQLiteDatabase database;
+        try {
+            database = SQLiteDatabase.openDatabase(file.getPath(), null,
+                    SQLiteDatabase.OPEN_READONLY);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Backup is not a database", e);
+        }
+        try {
+            int version = database.getVersion();
+            if (version < 1 || version > BookDbHelper.DATABASE_VERSION) {
+                throw new IllegalArgumentException("Backup has schema version " + version
+                        + ", but only versions up to " + BookDbHelper.DATABASE_VERSION
+                        + " can be restored");
+            }
+            Cursor check = database.rawQuery("PRAGMA quick_check", null);
+            try {
+                if (!check.moveToFirst() || !"ok".equals(check.getString(0))) {
+                    throw new IllegalArgumentException("Backup is damaged");
+                }
+            } finally {
+                check.close();
+            }
+            return version;
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Delete the given database file along with its log and journal, if there are any.
+     */
+    private static void deleteDatabaseFiles(File file) {
+        file.delete();
+        for (String suffix : JOURNAL_SUFFIXES) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    /**
+     * Copy the given file to the given destination, replacing it.
+     */
+    private static void copy(File source, File destination) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(destination);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copy everything left in the given stream to the given output.
+     */
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 public final class BookContract {
 
     // To prevent someone from accidentally instantiating the contract class,
@@ -26,6 +32,317 @@ public final class BookContract {
      */
     public static final String PATH_BOOKS = "books";
 
+    /**
+     * Path appended to the books content URI, followed by the search text, to search books.
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to a single book's content URI to adjust its stock quantity.
+     */
+    public static final String PATH_ADJUST = "adjust";
+
+    /**
+     * Path appended to a single book's content URI to read its stock movements.
+     */
+    public static final String PATH_MOVEMENTS = "movements";
+
+    /**
+     * Path appended to the books content URI for the books that are due to be reordered.
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path appended to the books content URI for an export of the whole catalog.
+     */
+    public static final String PATH_EXPORT = "export";
+
+    /**
+     * Path appended to the books content URI for the URI that catalog queries are notified on.
+     */
+    public static final String PATH_CATALOG = "catalog";
+
+    /**
+     * Path appended to base content URI for the stock summary of each genre.
+     */
+    public static final String PATH_SUMMARY = "summary";
+
+    /**
+     * Path appended to the summary content URI for the stock summary of all genres together.
+     */
+    public static final String PATH_TOTAL = "total";
+
+    /**
+     * Path appended to base content URI for the imports of books from CSV files.
+     */
+    public static final String PATH_IMPORTS = "imports";
+
+    /**
+     * Path appended to a single import's content URI for the records it rejected.
+     */
+    public static final String PATH_REJECTIONS = "rejections";
+
+    /**
+     * Possible path (appended to base content URI for possible URI's)
+     * For instance, content://com.example.android.inventoryapp/suppliers/ is a valid path for
+     * looking at the suppliers of the books.
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Query parameter on the books content URI for a paged query, holding the page key (see
+     * {@link BookEntry#buildPageKey}) of the book just before the page. Only books after it are
+     * returned.
+     */
+    public static final String QUERY_PARAMETER_AFTER = "after";
+
+    /**
+     * Query parameter on the books content URI for a paged query, holding the page key of the
+     * last book in the page. Only books up to and including it are returned.
+     */
+    public static final String QUERY_PARAMETER_UNTIL = "until";
+
+    /**
+     * Query parameter on the books content URI for a paged query, holding the maximum number of
+     * books to return.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter on the books content URI holding the order of the books, one of
+     * {@link #SORT_NAME}, {@link #SORT_PRICE}, {@link #SORT_QUANTITY} or {@link #SORT_GENRE}.
+     * Books with the same value are ordered by {@link BookEntry#PAGE_SORT_ORDER}. Books are
+     * ordered by name if it is left out.
+     */
+    public static final String QUERY_PARAMETER_SORT = "sort";
+
+    /**
+     * Query parameter on the books content URI holding a genre to return books of. It can be
+     * given more than once, for books of any of the genres. Books of every genre are returned if
+     * it is left out.
+     */
+    public static final String QUERY_PARAMETER_GENRE = "genre";
+
+    /**
+     * Query parameter on the books content URI holding the lowest price of the books to return,
+     * in minor units of the currency.
+     */
+    public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+
+    /**
+     * Query parameter on the books content URI holding the highest price of the books to return,
+     * in minor units of the currency.
+     */
+    public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+
+    /**
+     * Query parameter on the books content URI that, set to "true", only returns the books that
+     * are in stock.
+     */
+    public static final String QUERY_PARAMETER_IN_STOCK = "in_stock";
+
+    /**
+     * Possible values of {@link #QUERY_PARAMETER_SORT}. Sorting by name, price or genre reads the
+     * books in order from an index. The current stock of a book isn't in any index, as it is
+     * worked out from the stock movements, so sorting by quantity sorts every book that matches.
+     */
+    public static final String SORT_NAME = "name";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_QUANTITY = "quantity";
+    public static final String SORT_GENRE = "genre";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that adjusts the stock quantity of the
+     * book whose ID is passed as the argument, by the {@link BookEntry#ADJUST_DELTA} in the
+     * extras. The returned bundle holds the new stock level under
+     * {@link BookEntry#COLUMN_PRODUCT_QUANTITY}, or -1 if the adjustment was rejected.
+     */
+    public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that returns how many change notifications
+     * the provider has been asked to send, under {@link #KEY_NOTIFICATIONS_REQUESTED}, and how
+     * many it actually sent after coalescing them, under {@link #KEY_NOTIFICATIONS_SENT}.
+     */
+    public static final String METHOD_NOTIFICATION_STATS = "notification_stats";
+
+    /** Key for the number of change notifications asked for. */
+    public static final String KEY_NOTIFICATIONS_REQUESTED = "notifications_requested";
+
+    /** Key for the number of change notifications actually sent. */
+    public static final String KEY_NOTIFICATIONS_SENT = "notifications_sent";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that sets how long the provider gathers
+     * changes for before notifying them, in milliseconds, passed as the argument. A window of 0
+     * sends every notification straight away.
+     */
+    public static final String METHOD_SET_NOTIFICATION_WINDOW = "set_notification_window";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that returns the statistics of the cache
+     * the provider serves single books from: the number of lookups served from the cache under
+     * {@link #KEY_ROW_CACHE_HITS}, the number read from the database under
+     * {@link #KEY_ROW_CACHE_MISSES}, and the number of rows evicted to make room or because
+     * memory was low under {@link #KEY_ROW_CACHE_EVICTIONS}.
+     */
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    /** Key for the number of single book lookups served from the cache. */
+    public static final String KEY_ROW_CACHE_HITS = "row_cache_hits";
+
+    /** Key for the number of single book lookups read from the database. */
+    public static final String KEY_ROW_CACHE_MISSES = "row_cache_misses";
+
+    /** Key for the number of books evicted from the cache. */
+    public static final String KEY_ROW_CACHE_EVICTIONS = "row_cache_evictions";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that folds every stock movement recorded
+     * so far into the stock snapshot of its book, straight away rather than in the background.
+     * The returned bundle holds the number of books whose snapshot moved on under
+     * {@link #KEY_BOOKS_COMPACTED}.
+     */
+    public static final String METHOD_COMPACT_STOCK = "compact_stock";
+
+    /** Key for the number of books whose stock snapshot was brought up to date. */
+    public static final String KEY_BOOKS_COMPACTED = "books_compacted";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that backs the database up, compressed,
+     * to the file whose path is passed as the argument, while books can still be sold. The
+     * returned bundle holds how long writers were held up for under {@link #KEY_SNAPSHOT_MILLIS},
+     * how long the whole backup took under {@link #KEY_BACKUP_MILLIS}, and the size of the
+     * database and of the backup in bytes under {@link #KEY_SNAPSHOT_BYTES} and
+     * {@link #KEY_BACKUP_BYTES}.
+     */
+    public static final String METHOD_BACKUP = "backup";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that replaces the database with the one
+     * backed up to the file whose path is passed as the argument. It throws an
+     * {@link IllegalArgumentException} and leaves the database as it is if the backup is damaged
+     * or from a newer version of the app. The returned bundle holds the schema version of the
+     * backup under {@link #KEY_SCHEMA_VERSION}, and how long the restore took under
+     * {@link #KEY_RESTORE_MILLIS}.
+     */
+    public static final String METHOD_RESTORE = "restore";
+
+    /** Key for the time writers were held up while the database was copied, in milliseconds. */
+    public static final String KEY_SNAPSHOT_MILLIS = "snapshot_millis";
+
+    /** Key for the size of the database that was backed up, in bytes. */
+    public static final String KEY_SNAPSHOT_BYTES = "snapshot_bytes";
+
+    /** Key for the time the whole backup took, in milliseconds. */
+    public static final String KEY_BACKUP_MILLIS = "backup_millis";
+
+    /** Key for the size of the compressed backup, in bytes. */
+    public static final String KEY_BACKUP_BYTES = "backup_bytes";
+
+    /** Key for the schema version of the database that was restored. */
+    public static final String KEY_SCHEMA_VERSION = "schema_version";
+
+    /** Key for the time the restore took, in milliseconds. */
+    public static final String KEY_RESTORE_MILLIS = "restore_millis";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that returns what the provider has done
+     * since it started, broken down by URI pattern and operation. The returned bundle holds a
+     * bundle for each pair that has been used, under the pattern (such as "books/#") and the
+     * operation (such as "query") separated by a space. Each holds the number of calls under
+     * {@link #KEY_METRIC_CALLS}, how many of them failed under {@link #KEY_METRIC_FAILURES}, the
+     * rows written under {@link #KEY_METRIC_ROWS}, and their latency in microseconds under the
+     * other KEY_METRIC keys. Pass {@link #METRICS_RESET} as the argument to start counting again
+     * once the metrics have been read.
+     */
+    public static final String METHOD_METRICS = "metrics";
+
+    /** Argument of {@link #METHOD_METRICS} that starts counting again. */
+    public static final String METRICS_RESET = "reset";
+
+    /** Key for the number of calls. */
+    public static final String KEY_METRIC_CALLS = "calls";
+
+    /** Key for the number of calls that threw an exception. */
+    public static final String KEY_METRIC_FAILURES = "failures";
+
+    /** Key for the number of rows inserted, updated or deleted. Queries don't count any. */
+    public static final String KEY_METRIC_ROWS = "rows";
+
+    /** Key for the total time taken by the calls, in microseconds. */
+    public static final String KEY_METRIC_TOTAL_MICROS = "total_micros";
+
+    /** Key for the time taken by the slowest call, in microseconds. */
+    public static final String KEY_METRIC_MAX_MICROS = "max_micros";
+
+    /** Keys for the time within which half, 90% and 99% of the calls ended, in microseconds. */
+    public static final String KEY_METRIC_P50_MICROS = "p50_micros";
+    public static final String KEY_METRIC_P90_MICROS = "p90_micros";
+    public static final String KEY_METRIC_P99_MICROS = "p99_micros";
+
+    /**
+     * Key for the latency histogram, as the number of calls that ended within each of the times
+     * under {@link #KEY_METRIC_HISTOGRAM_BOUNDS}, and after the one before it.
+     */
+    public static final String KEY_METRIC_HISTOGRAM = "histogram";
+
+    /** Key for the upper bound of each bucket of the latency histogram, in microseconds. */
+    public static final String KEY_METRIC_HISTOGRAM_BOUNDS = "histogram_bounds";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that starts recording the operations that
+     * take at least the number of milliseconds given as the argument, along with the plan SQLite
+     * chose for them. A negative number stops recording. Nothing is recorded until this is
+     * called. Returns null.
+     */
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
+    /**
+     * Provider method for {@link ContentResolver#call} that returns the recent slow operations
+     * recorded since {@link #METHOD_SET_SLOW_QUERY_THRESHOLD} was called, oldest first, as a list
+     * of bundles under {@link #KEY_SLOW_QUERIES}. Only the last few dozen are kept. Pass
+     * {@link #SLOW_QUERIES_CLEAR} as the argument to forget them once they have been read.
+     */
+    public static final String METHOD_SLOW_QUERIES = "slow_queries";
+
+    /** Argument of {@link #METHOD_SLOW_QUERIES} that forgets the operations returned. */
+    public static final String SLOW_QUERIES_CLEAR = "clear";
+
+    /** Key for the list of slow operations. */
+    public static final String KEY_SLOW_QUERIES = "slow_queries";
+
+    /** Key for the time a slow operation ended, in milliseconds since the epoch. */
+    public static final String KEY_SLOW_QUERY_TIME = "time";
+
+    /**
+     * Key for the URI pattern a slow operation matched (such as "books/#"), followed by the names
+     * of its query parameters. IDs, search words and parameter values are left out.
+     */
+    public static final String KEY_SLOW_QUERY_URI = "uri";
+
+    /** Key for the operation that was slow, named as in {@link #METHOD_METRICS}. */
+    public static final String KEY_SLOW_QUERY_OPERATION = "operation";
+
+    /**
+     * Keys for the selection and sort order of a slow operation, with every literal in them
+     * replaced by "?". The selection arguments aren't recorded.
+     */
+    public static final String KEY_SLOW_QUERY_SELECTION = "selection";
+    public static final String KEY_SLOW_QUERY_SORT_ORDER = "sort_order";
+
+    /** Key for the rows a slow operation returned or wrote, or -1 if it failed. */
+    public static final String KEY_SLOW_QUERY_ROWS = "rows";
+
+    /** Key for the time a slow operation took, in milliseconds. */
+    public static final String KEY_SLOW_QUERY_MILLIS = "millis";
+
+    /**
+     * Key for each statement a slow operation ran, with its literals replaced by "?", followed by
+     * the steps of its EXPLAIN QUERY PLAN, indented on the lines after it.
+     */
+    public static final String KEY_SLOW_QUERY_PLAN = "plan";
+
     /**
      * Inner class that defines constant values for the books database table.
      * Each entry in the table represents a single book.
@@ -35,6 +352,38 @@ public final class BookContract {
         /** The content URI to access the book data in the provider. */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_BOOKS);
 
+        /**
+         * The content URI for the books whose stock is at or below their
+         * {@link #COLUMN_PRODUCT_REORDER_THRESHOLD}, in {@link #LOW_STOCK_SORT_ORDER} unless
+         * another order is given. It has the same columns as the {@link #CONTENT_URI}.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The content URI to export the whole catalog from, as a stream rather than a cursor.
+         * Open it with {@link ContentResolver#openTypedAssetFileDescriptor} for
+         * {@link #EXPORT_CSV_TYPE} or {@link #EXPORT_JSON_TYPE}, or with
+         * {@link ContentResolver#openInputStream} for CSV. The books are written as they are
+         * read, so reading can start before the export has finished.
+         */
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        /**
+         * The URI that the cursors of catalog queries, which are paged, sorted or filtered with
+         * the query parameters, are notified on. It can't be queried itself. It sits under the
+         * {@link #CONTENT_URI}, so it hears of books added, deleted or changed in bulk there, but
+         * not above the URI of a single book, so a change to one book doesn't reload whole
+         * pages. That change is only notified on the URI of the book, which a list showing the
+         * catalog can watch for to fetch just the book again.
+         */
+        public static final Uri CATALOG_URI = Uri.withAppendedPath(CONTENT_URI, PATH_CATALOG);
+
+        /** MIME type of the catalog exported as CSV, with a header naming the columns. */
+        public static final String EXPORT_CSV_TYPE = "text/csv";
+
+        /** MIME type of the catalog exported as a JSON array with one object per book. */
+        public static final String EXPORT_JSON_TYPE = "application/json";
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of books.
          */
@@ -78,12 +427,18 @@ public final class BookContract {
         public final static String COLUMN_PRODUCT_GENRE = "genre";
 
         /**
-         * Price of the book.
+         * Price of the book, as a whole number of minor units of the currency, such as cents, so
+         * prices add up and compare exactly. A price that isn't a whole number is rejected. Use
+         * {@link #getPrice}, {@link #putPrice}, {@link #toAmount} and {@link #toPrice} rather
+         * than reading and writing the column directly.
          * <p>
-         * Type: REAL
+         * Type: INTEGER
          */
         public final static String COLUMN_PRODUCT_PRICE = "price";
 
+        /** Number of decimal places of a price in the minor units it is kept in. */
+        public static final int PRICE_SCALE = 2;
+
         /**
          * How much stock there is of the book.
          *
@@ -92,19 +447,157 @@ public final class BookContract {
         public final static String COLUMN_PRODUCT_QUANTITY = "quantity";
 
         /**
-         * Name of the supplier.
+         * ID of the supplier of the book in the suppliers table, see {@link SupplierEntry}.
+         *
+         * A book can be given either this, or the {@link #COLUMN_PRODUCT_SUPPLIER_NAME} and
+         * {@link #COLUMN_PRODUCT_SUPPLIER_PHONE}, in which case the provider finds the supplier
+         * with that name, or adds it.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Name of the supplier. It is read from the suppliers table, so every book of a supplier
+         * has the same supplier name.
          *
          * Type: TEXT
          */
         public final static String COLUMN_PRODUCT_SUPPLIER_NAME = "supplier_name";
 
         /**
-         * Phone number for the supplier.
+         * Phone number for the supplier. It is read from the suppliers table, so changing it for
+         * one book changes it for every book of the same supplier.
          *
          * Type: TEXT
          */
         public final static String COLUMN_PRODUCT_SUPPLIER_PHONE = "supplier_phone_number";
 
+        /**
+         * Stock quantity at or below which the book is due to be reordered, and shows up at the
+         * {@link #LOW_STOCK_URI}. It is 0 unless given, so only books that have sold out are
+         * reordered.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_REORDER_THRESHOLD = "reorder_threshold";
+
+        /**
+         * Key for the signed change in stock quantity, used in the values passed to an update
+         * of an adjust URI (see {@link #buildAdjustUri(long)}).
+         *
+         * Type: INTEGER
+         */
+        public final static String ADJUST_DELTA = "delta";
+
+        /**
+         * Key for the reason for a change in stock quantity, used in the values passed to an
+         * update of an adjust URI. It is one of the reasons in {@link StockMovementEntry}. If it
+         * is left out, a negative delta is a {@link StockMovementEntry#REASON_SALE} and a
+         * positive one a {@link StockMovementEntry#REASON_RESTOCK}.
+         *
+         * Type: INTEGER
+         */
+        public final static String ADJUST_REASON = "reason";
+
+        /**
+         * Returns the URI used to adjust the stock quantity of the book with the given ID.
+         * Updating it with an {@link #ADJUST_DELTA} adds the delta to the current quantity in a
+         * single statement, and only if the quantity wouldn't drop below zero.
+         */
+        public static Uri buildAdjustUri(long id) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, id), PATH_ADJUST);
+        }
+
+        /**
+         * Returns the URI used to read the stock movements of the book with the given ID, most
+         * recent first.
+         */
+        public static Uri buildMovementsUri(long id) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, id),
+                    PATH_MOVEMENTS);
+        }
+
+        /**
+         * Sort order of a paged query on the {@link #CONTENT_URI}. Books are ordered by name, and
+         * books with the same name by ID, so every book has a unique position in the catalog.
+         * Books sorted by another {@link BookContract#QUERY_PARAMETER_SORT} are in this order
+         * where they have the same value.
+         */
+        public static final String PAGE_SORT_ORDER = COLUMN_PRODUCT_NAME + ", " + _ID;
+
+        /**
+         * Default sort order of the {@link #LOW_STOCK_URI}. The books to reorder are grouped by
+         * supplier, so each supplier's order can be read off in one go.
+         */
+        public static final String LOW_STOCK_SORT_ORDER = COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + COLUMN_PRODUCT_NAME + ", " + _ID;
+
+        /**
+         * Returns the key of the book with the given name and ID, used to mark the start or end
+         * of a page of books. A page is read by seeking straight to the key, so reading a page
+         * costs the same however far into the catalog it is.
+         */
+        public static String buildPageKey(String name, long id) {
+            return name + "," + id;
+        }
+
+        /**
+         * Returns the page key of the book with the given name and ID in books sorted by price,
+         * quantity or genre (see {@link BookContract#QUERY_PARAMETER_SORT}), where the book has
+         * the given price, quantity or genre.
+         */
+        public static String buildPageKey(long sortValue, String name, long id) {
+            return sortValue + "," + buildPageKey(name, id);
+        }
+
+        /**
+         * Returns the URI for a page of books, ordered by {@link #PAGE_SORT_ORDER}.
+         *
+         * @param afterKey page key of the book just before the page, or null for the first page.
+         * @param untilKey page key of the last book in the page, or null if the page is open ended.
+         * @param limit    maximum number of books in the page, or 0 for no limit.
+         */
+        public static Uri buildPageUri(String afterKey, String untilKey, int limit) {
+            return buildPageUri(CONTENT_URI, afterKey, untilKey, limit);
+        }
+
+        /**
+         * Returns the URI for a page of the books returned by the given URI, which is the
+         * {@link #CONTENT_URI} with any of the sort and filter query parameters, such as
+         * {@link BookContract#QUERY_PARAMETER_SORT} or {@link BookContract#QUERY_PARAMETER_GENRE}.
+         * The page keys have to be made for the same sort order.
+         *
+         * @param booksUri URI of the books to page through.
+         * @param afterKey page key of the book just before the page, or null for the first page.
+         * @param untilKey page key of the last book in the page, or null if the page is open ended.
+         * @param limit    maximum number of books in the page, or 0 for no limit.
+         */
+        public static Uri buildPageUri(Uri booksUri, String afterKey, String untilKey,
+                                       int limit) {
+            Uri.Builder builder = booksUri.buildUpon();
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER, afterKey);
+            }
+            if (untilKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_UNTIL, untilKey);
+            }
+            if (limit > 0) {
+                builder.appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Returns the URI used to search books by name and supplier name. Every word of the given
+         * text must match the start of a word in the book, and the results are ordered with the
+         * best matches first. The text is encoded, so it can hold anything the user typed, such
+         * as a slash or a question mark.
+         */
+        public static Uri buildSearchUri(String text) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(text).build();
+        }
+
         /**
          * Possible values for the genre of the book.
          */
@@ -130,5 +623,392 @@ public final class BookContract {
             }
             return false;
         }
+
+        /**
+         * Returns the price of the book at the current position of the given cursor, in minor
+         * units.
+         */
+        public static long getPrice(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PRODUCT_PRICE));
+        }
+
+        /**
+         * Put the given price, in minor units, into the given values of a book.
+         */
+        public static void putPrice(ContentValues values, long price) {
+            values.put(COLUMN_PRODUCT_PRICE, price);
+        }
+
+        /**
+         * Returns the given price in minor units as an amount of the currency, such as 5.99 for
+         * 599, to show to the user or write to an export.
+         */
+        public static BigDecimal toAmount(long price) {
+            return BigDecimal.valueOf(price, PRICE_SCALE);
+        }
+
+        /**
+         * Returns the given amount of the currency as a price in minor units, rounded half up to
+         * the nearest one.
+         *
+         * @throws ArithmeticException if the price doesn't fit in a long.
+         */
+        public static long toPrice(BigDecimal amount) {
+            return amount.setScale(PRICE_SCALE, RoundingMode.HALF_UP).longValueExact();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the stock movements database table. Each entry
+     * in the table is a single change to the stock of a book. Entries are only ever appended, so
+     * the table is the full history of the stock of every book.
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the stock movements of a book.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS;
+
+        /**
+         * Name of database table for stock movements.
+         */
+        public final static String TABLE_NAME = "stock_movements";
+
+        /**
+         * Unique ID number for the movement, in the order the movements were made.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the book whose stock changed.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * Signed change in the stock quantity of the book.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DELTA = "delta";
+
+        /**
+         * Reason for the change.
+         *
+         * The only possible values are {@link #REASON_SALE}, {@link #REASON_RESTOCK} or
+         * {@link #REASON_ADJUSTMENT}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_REASON = "reason";
+
+        /**
+         * When the change was made, in milliseconds since the epoch.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TIMESTAMP = "timestamp";
+
+        /**
+         * Possible values for the reason for a stock movement.
+         */
+        public static final int REASON_SALE = 0;
+        public static final int REASON_RESTOCK = 1;
+        public static final int REASON_ADJUSTMENT = 2;
+
+        /**
+         * Returns whether or not the given reason is {@link #REASON_SALE},
+         * {@link #REASON_RESTOCK} or {@link #REASON_ADJUSTMENT}.
+         */
+        public static boolean isValidReason(int reason) {
+            return reason == REASON_SALE || reason == REASON_RESTOCK
+                    || reason == REASON_ADJUSTMENT;
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the inventory summary database table. Each
+     * entry in the table sums up the books of one genre. The table is kept up to date by the
+     * database as books and stock movements change, so reading it costs the same however many
+     * books there are.
+     */
+    public static final class SummaryEntry {
+
+        /** The content URI to access the summary of each genre in the provider. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUMMARY);
+
+        /**
+         * The content URI to access the summary of all genres together, as a single row with the
+         * same columns as the summary of a genre except {@link #COLUMN_GENRE}.
+         */
+        public static final Uri TOTAL_CONTENT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_TOTAL);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the summaries of all genres.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the summary of a single genre, or of all
+         * genres together.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+
+        /**
+         * Name of database table for the inventory summary.
+         */
+        public final static String TABLE_NAME = "inventory_summary";
+
+        /**
+         * Genre summed up by the entry, one of the genres in {@link BookEntry}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_GENRE = "genre";
+
+        /**
+         * Number of different books.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TITLE_COUNT = "title_count";
+
+        /**
+         * Number of books in stock, counting every copy.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNIT_COUNT = "unit_count";
+
+        /**
+         * Value of the books in stock, at their prices, in minor units of the currency like
+         * {@link BookEntry#COLUMN_PRODUCT_PRICE}. See {@link #getStockValue}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_STOCK_VALUE = "stock_value";
+
+        /**
+         * Returns the stock value of the summary at the current position of the given cursor, in
+         * minor units.
+         */
+        public static long getStockValue(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_STOCK_VALUE));
+        }
+
+        /**
+         * Returns the URI for the summary of the given genre.
+         */
+        public static Uri buildGenreUri(int genre) {
+            return ContentUris.withAppendedId(CONTENT_URI, genre);
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the imports database table. Each entry in the
+     * table is one import of books from a CSV file, and keeps track of how far the import has got.
+     * The progress is written in the same transaction as the books, so an import that is
+     * interrupted can carry on from the last records it committed.
+     */
+    public static final class ImportEntry implements BaseColumns {
+
+        /** The content URI to access the imports in the provider. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_IMPORTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of imports.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_IMPORTS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single import.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_IMPORTS;
+
+        /**
+         * Name of database table for imports.
+         */
+        public final static String TABLE_NAME = "imports";
+
+        /**
+         * Unique ID number for the import.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * URI of the CSV file the books are imported from.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SOURCE = "source";
+
+        /**
+         * State of the import.
+         *
+         * The only possible values are {@link #STATUS_RUNNING}, {@link #STATUS_FINISHED} or
+         * {@link #STATUS_FAILED}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_STATUS = "status";
+
+        /**
+         * Number of records read from the file and committed, not counting the header.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECORDS_READ = "records_read";
+
+        /**
+         * Number of books inserted so far.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_BOOKS_IMPORTED = "books_imported";
+
+        /**
+         * Number of records rejected so far, each of which is listed at the
+         * {@link #buildRejectionsUri(long)} of the import.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECORDS_REJECTED = "records_rejected";
+
+        /**
+         * When the progress of the import was last committed, in milliseconds since the epoch.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UPDATED = "updated";
+
+        /**
+         * Possible values for the state of an import.
+         */
+        public static final int STATUS_RUNNING = 0;
+        public static final int STATUS_FINISHED = 1;
+        public static final int STATUS_FAILED = 2;
+
+        /**
+         * Returns the URI for the records rejected by the import with the given ID, in the
+         * order they appear in the file.
+         */
+        public static Uri buildRejectionsUri(long id) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, id),
+                    PATH_REJECTIONS);
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the import rejections database table. Each
+     * entry in the table is one record of a CSV file that couldn't be imported as a book.
+     */
+    public static final class RejectionEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the records rejected by an import.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_REJECTIONS;
+
+        /**
+         * Name of database table for import rejections.
+         */
+        public final static String TABLE_NAME = "import_rejections";
+
+        /**
+         * Unique ID number for the rejection.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the import that rejected the record.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_IMPORT_ID = "import_id";
+
+        /**
+         * Number of the record in the file, counting from 1 after the header.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECORD_NUMBER = "record_number";
+
+        /**
+         * Why the record was rejected, as a message for the user.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_REASON = "reason";
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table. Each entry in
+     * the table is one supplier, which any number of books can be bought from.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /** The content URI to access the suppliers in the provider. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI,
+                PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Name of database table for suppliers.
+         */
+        public final static String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the supplier. No two suppliers have the same name.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = "name";
+
+        /**
+         * Phone number for the supplier.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_PHONE = "phone_number";
+
+        /**
+         * Returns the URI for the books of the supplier with the given ID. The books have the
+         * same columns as at {@link BookEntry#CONTENT_URI}.
+         */
+        public static Uri buildBooksUri(long id) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, id), PATH_BOOKS);
+        }
     }
 }
@@ -1,10 +1,18 @@
 package com.example.android.inventoryapp.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
 
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.ImportEntry;
+import com.example.android.inventoryapp.data.BookContract.RejectionEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SummaryEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
 
 /**
  * Database helper for the Inventory app. Manages database creation and version management.
@@ -14,15 +22,186 @@ public class BookDbHelper extends SQLiteOpenHelper {
     /** Name of the database file. */
     private static final String DATABASE_NAME = "bookstore.db";
 
-    /** Database version number. */
-    private static final int DATABASE_VERSION = 1;
+    /**
+     * Database version number. If you change the database schema, you must increment the
+     * database version and add the matching step to {@link #onUpgrade}.
+     */
+    static final int DATABASE_VERSION = 12;
+
+    /**
+     * Size of the page cache for the writer connection, in KiB (negative values are KiB in
+     * SQLite, positive values are pages).
+     */
+    private static final int CACHE_SIZE_KIB = 4096;
+
+    /**
+     * Index for the catalog list, ordered by name and then ID, the order catalog pages are read
+     * in. It also holds the price and the stock snapshot, so the catalog projection can be read
+     * from the index and the un-compacted stock movements alone.
+     */
+    static final String INDEX_BOOKS_NAME = "books_name_index";
+
+    /** Index for looking up books by genre, ordered by name within each genre. */
+    static final String INDEX_BOOKS_GENRE = "books_genre_index";
+
+    /**
+     * Index for looking up books by supplier, which also keeps checking the foreign key cheap when
+     * a supplier changes.
+     */
+    static final String INDEX_BOOKS_SUPPLIER = "books_supplier_index";
+
+    /**
+     * Index on the stored quantity, which only holds the stock snapshot since version 5, so no
+     * lookup can use it. Version 12 drops it, and the reorder queue finds the books low on stock.
+     */
+    static final String INDEX_BOOKS_QUANTITY = "books_quantity_index";
+
+    /**
+     * Index for sorting books by price and finding them within a price range. Books with the same
+     * price are ordered by name and then ID, so books sorted by price come out of the index in
+     * the order catalog pages are read in.
+     */
+    static final String INDEX_BOOKS_PRICE = "books_price_index";
+
+    /**
+     * Expression that turns a price kept as a REAL amount of the currency, as before version 10,
+     * into a whole number of minor units.
+     */
+    private static final String PRICE_IN_MINOR_UNITS = "CAST(ROUND("
+            + BookEntry.COLUMN_PRODUCT_PRICE + " * " + (long) Math.pow(10, BookEntry.PRICE_SCALE)
+            + ") AS INTEGER)";
+
+    /**
+     * Name of the full-text search table over the book name. It is an external content FTS4
+     * table, so it only stores the search index and reads the text from the books table. Its
+     * docid is the ID of the book.
+     */
+    static final String TABLE_BOOKS_FTS = "books_fts";
+
+    /**
+     * Name of the full-text search table over the supplier name, in the same way as
+     * {@link #TABLE_BOOKS_FTS}. Its docid is the ID of the supplier.
+     */
+    static final String TABLE_SUPPLIERS_FTS = "suppliers_fts";
+
+    /**
+     * Column of the books table holding the ID of the last stock movement folded into the
+     * quantity column. The quantity column is only a snapshot: the current stock of a book is
+     * the snapshot plus every movement of the book after this one (see {@link #CURRENT_QUANTITY}).
+     */
+    static final String COLUMN_SNAPSHOT_MOVEMENT_ID = "snapshot_movement_id";
+
+    /** Index for finding the stock movements of a book in the order they were made. */
+    static final String INDEX_MOVEMENTS_BOOK = "stock_movements_book_index";
+
+    /**
+     * Expression for the current stock of a book in the books table: its snapshot plus the stock
+     * movements made since. Compaction keeps the number of movements after the snapshot small, so
+     * this costs a short range scan of the movements index.
+     */
+    static final String CURRENT_QUANTITY = currentQuantity(BookEntry.TABLE_NAME);
+
+    /**
+     * Name of the view that books are read from. It has the same columns as the books table as
+     * seen from outside the provider, with the quantity being the {@link #CURRENT_QUANTITY} and
+     * the supplier name and phone number joined in from the suppliers table.
+     */
+    static final String VIEW_BOOKS = "books_stock";
+
+    /**
+     * Name of the reorder queue table. It holds the ID of every book whose current stock is at
+     * or below its reorder threshold, and nothing else, so finding the books to reorder costs in
+     * proportion to how many there are rather than to the size of the catalog. Triggers add and
+     * remove books as their stock or threshold changes.
+     */
+    static final String TABLE_LOW_STOCK = "low_stock";
+
+    /** Column of the reorder queue table holding the ID of the book. */
+    static final String COLUMN_LOW_STOCK_BOOK_ID = "book_id";
+
+    /** Index for finding the records rejected by an import, in the order they were read. */
+    static final String INDEX_REJECTIONS_IMPORT = "import_rejections_import_index";
+
+    /** Compiled statements for the hot paths of the provider, see {@link BookStatements}. */
+    private final BookStatements mStatements = new BookStatements(this);
 
     /**
      * Constructs a new instance of {@link BookDbHelper}.
      * @param context of the app.
      */
     public BookDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, null);
+    }
+
+    /**
+     * Constructs a new instance of {@link BookDbHelper} whose queries create their cursors
+     * through the given factory, or the default one if it is null.
+     * @param context of the app.
+     * @param factory creating the cursors of queries.
+     */
+    BookDbHelper(Context context, SQLiteDatabase.CursorFactory factory) {
+        super(context, DATABASE_NAME, factory, DATABASE_VERSION);
+
+        // Use write-ahead logging, so readers such as the catalog loader run alongside the single
+        // writer instead of waiting for every sale to commit. Before Jelly Bean this has to be
+        // switched on once the database is open, see onOpen().
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * Returns the compiled statements for the hot paths of the provider.
+     */
+    BookStatements getStatements() {
+        return mStatements;
+    }
+
+    /**
+     * Close the database, along with the statements compiled against it.
+     */
+    @Override
+    public synchronized void close() {
+        mStatements.clear();
+        super.close();
+    }
+
+    /**
+     * This is called when the database connection is being configured, before it is created or
+     * upgraded.
+     * @param db
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        configureConnection(db);
+    }
+
+    /**
+     * This is called when the database has been opened.
+     * @param db
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+            configureConnection(db);
+        }
+    }
+
+    /**
+     * Apply the connection settings that suit write-ahead logging. With WAL, NORMAL
+     * synchronisation is still safe from corruption and only syncs at checkpoints rather than on
+     * every commit. A larger page cache keeps the indexes in memory between writes.
+     * @param db
+     */
+    private static void configureConnection(SQLiteDatabase db) {
+        // SQLite only checks that the supplier of each book exists when asked to.
+        db.execSQL("PRAGMA foreign_keys = ON;");
+        db.execSQL("PRAGMA synchronous = NORMAL;");
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB + ";");
     }
 
     /**
@@ -31,18 +210,32 @@ public class BookDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create a String that contains the SQL statement to create the books table.
-        String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + BookEntry.TABLE_NAME + " ( "
-                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
-                + BookEntry.COLUMN_PRODUCT_GENRE + " INTEGER NOT NULL, "
-                + BookEntry.COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
-                + BookEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
-                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " TEXT NOT NULL, "
-                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE + " TEXT NOT NULL);";
+        // Create the suppliers table, which the books table refers to, and the books table.
+        createSuppliers(db);
+        createBooksTable(db, BookEntry.TABLE_NAME);
+
+        // Create the stock movements ledger and the view that reads the current stock from it.
+        createStockMovements(db);
+        createStockMovementsTrigger(db);
+        createBooksView(db);
+
+        // Create the inventory summary, which starts out empty like the books table.
+        createInventorySummary(db);
+        createInventorySummaryTriggers(db);
+
+        // Create the reorder queue, which starts out empty like the books table.
+        createLowStockQueue(db);
+        createLowStockTriggers(db);
+
+        // Create the tables that keep track of book imports.
+        createImports(db);
+
+        // Create the secondary indexes on the books table.
+        createCatalogIndex(db);
+        createBookIndexes(db);
 
-        // Execute the SQL statement.
-        db.execSQL(SQL_CREATE_BOOKS_TABLE);
+        // Create the full-text search table for the books table.
+        createBooksFts(db);
     }
 
     /**
@@ -53,6 +246,545 @@ public class BookDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to be done here.
+        // Statements compiled against the old schema can't be used any more.
+        mStatements.clear();
+
+        // Apply each schema change in turn, so a database at any older version ends up with the
+        // current schema. Versions 2 to 4 added the secondary indexes, the full-text search table
+        // and the catalog index to the books table. Version 9 rebuilds the books table, which
+        // creates all of them afresh, so they aren't created on the way there.
+        if (oldVersion < 5) {
+            // Version 5 added the stock movements ledger. The quantity of each book becomes its
+            // snapshot, with no movements folded into it yet.
+            createStockMovements(db);
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                    + COLUMN_SNAPSHOT_MOVEMENT_ID + " INTEGER NOT NULL DEFAULT 0;");
+        }
+        if (oldVersion < 6) {
+            // Version 6 added the inventory summary, which has to be counted up once from the
+            // books that are already in the database. Its triggers are created with the books
+            // table below.
+            createInventorySummary(db);
+            countInventorySummary(db);
+        }
+        if (oldVersion < 7) {
+            // Version 7 added the reorder threshold and the reorder queue. With every threshold
+            // at 0, the queue starts with the sold out books. Its triggers are created with the
+            // books table below.
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                    + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0;");
+            createLowStockQueue(db);
+            db.execSQL("INSERT INTO " + TABLE_LOW_STOCK + " SELECT " + BookEntry._ID + " FROM "
+                    + BookEntry.TABLE_NAME + " WHERE " + CURRENT_QUANTITY + " <= "
+                    + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ";");
+        }
+        if (oldVersion < 8) {
+            // Version 8 added the tables that keep track of book imports.
+            createImports(db);
+        }
+        if (oldVersion < 9) {
+            // Version 9 moved the suppliers into a table of their own.
+            moveSuppliersOutOfBooks(db);
+        }
+        if (oldVersion < 10) {
+            // Version 10 keeps the prices, and the stock values summed from them, as whole
+            // numbers of minor units. The books table was rebuilt with the prices converted on
+            // the way above if it was older than version 9, and is rebuilt here otherwise. The
+            // stock values are counted up again from the converted prices.
+            if (oldVersion == 9) {
+                convertPricesToMinorUnits(db);
+            }
+            db.execSQL("DROP TABLE " + SummaryEntry.TABLE_NAME + ";");
+            createInventorySummary(db);
+            countInventorySummary(db);
+        }
+        if (oldVersion < 11) {
+            // Version 11 added the name to the price index, so books sorted by price need no
+            // sort. The books table was rebuilt above, with the new index, if it was older than
+            // version 10.
+            if (oldVersion == 10) {
+                db.execSQL("DROP INDEX " + INDEX_BOOKS_PRICE + ";");
+                createPriceIndex(db);
+            }
+        }
+        if (oldVersion < 12) {
+            // Version 12 dropped the index on the stock snapshot, which every stock change and
+            // compaction had to keep up to date for no lookup at all.
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_BOOKS_QUANTITY + ";");
+        }
+
+        // Refresh the table statistics, so the query planner knows when to use the new indexes.
+        db.execSQL("ANALYZE");
+    }
+
+    /**
+     * Create the books table with the given name.
+     * @param db
+     * @param tableName
+     */
+    private static void createBooksTable(SQLiteDatabase db, String tableName) {
+        db.execSQL("CREATE TABLE " + tableName + " ( "
+                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + BookEntry.COLUMN_PRODUCT_GENRE + " INTEGER NOT NULL, "
+                + BookEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL CHECK (typeof("
+                + BookEntry.COLUMN_PRODUCT_PRICE + ") = 'integer'), "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + "(" + SupplierEntry._ID + "), "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + " INTEGER NOT NULL DEFAULT 0, "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0);");
+    }
+
+    /**
+     * Create the suppliers table, along with its full-text search table. The name is unique, so
+     * it also has an index for finding a supplier by name.
+     * @param db
+     */
+    private static void createSuppliers(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ( "
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " TEXT NOT NULL);");
+        createFts(db, TABLE_SUPPLIERS_FTS, SupplierEntry.TABLE_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_NAME);
+    }
+
+    /**
+     * Move the supplier name and phone number of every book into the suppliers table, leaving
+     * the ID of the supplier on the book. Books with the same supplier name share one supplier,
+     * with the phone number of the book added last.
+     *
+     * SQLite can't drop columns, so the books table is copied into a new one without them, see
+     * {@link #dropBooksDependents} and {@link #replaceBooksTable}. The new table has the current
+     * schema, so the prices are converted to minor units on the way.
+     * @param db
+     */
+    private static void moveSuppliersOutOfBooks(SQLiteDatabase db) {
+        String newTable = BookEntry.TABLE_NAME + "_new";
+        dropBooksDependents(db);
+
+        createSuppliers(db);
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                + ") SELECT " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry._ID + " IN (SELECT MAX(" + BookEntry._ID + ") FROM "
+                + BookEntry.TABLE_NAME + " GROUP BY " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                + ");");
+
+        String copiedColumns = BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + ", "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+        createBooksTable(db, newTable);
+        db.execSQL("INSERT INTO " + newTable + " (" + copiedColumns + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICE + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID
+                + ") SELECT " + copiedColumns + ", " + PRICE_IN_MINOR_UNITS + ", (SELECT "
+                + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME + " WHERE "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " = "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ") FROM " + BookEntry.TABLE_NAME + ";");
+        replaceBooksTable(db, newTable);
+    }
+
+    /**
+     * Convert the price of every book from a REAL amount of the currency to a whole number of
+     * minor units. The type of a column can't be changed in place, so the books table is copied
+     * into a new one, see {@link #dropBooksDependents} and {@link #replaceBooksTable}.
+     * @param db
+     */
+    private static void convertPricesToMinorUnits(SQLiteDatabase db) {
+        String newTable = BookEntry.TABLE_NAME + "_new";
+        dropBooksDependents(db);
+
+        String copiedColumns = BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + ", "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+        createBooksTable(db, newTable);
+        db.execSQL("INSERT INTO " + newTable + " (" + copiedColumns + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICE + ") SELECT " + copiedColumns + ", "
+                + PRICE_IN_MINOR_UNITS + " FROM " + BookEntry.TABLE_NAME + ";");
+        replaceBooksTable(db, newTable);
+    }
+
+    /**
+     * Drop everything that refers to the books table, before it is copied into a new one.
+     * Everything that hangs off the old table goes when it is dropped.
+     * @param db
+     */
+    private static void dropBooksDependents(SQLiteDatabase db) {
+        db.execSQL("DROP VIEW IF EXISTS " + VIEW_BOOKS + ";");
+        db.execSQL("DROP TRIGGER IF EXISTS " + SummaryEntry.TABLE_NAME + "_movement_inserted;");
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_LOW_STOCK + "_movement_inserted;");
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS_FTS + ";");
+    }
+
+    /**
+     * Replace the books table with the given copy of it, and create everything that hangs off it
+     * or refers to it again, as {@link #onCreate} does.
+     * @param db
+     * @param newTable
+     */
+    private static void replaceBooksTable(SQLiteDatabase db, String newTable) {
+        // Carry the last ID handed out over, so the IDs of deleted books aren't used again.
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + newTable + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + newTable + "', seq FROM"
+                + " sqlite_sequence WHERE name = '" + BookEntry.TABLE_NAME + "';");
+        db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + BookEntry.TABLE_NAME + ";");
+
+        createStockMovementsTrigger(db);
+        createInventorySummaryTriggers(db);
+        createLowStockTriggers(db);
+        createCatalogIndex(db);
+        createBookIndexes(db);
+        createBooksView(db);
+        createBooksFts(db);
+        db.execSQL("INSERT INTO " + TABLE_BOOKS_FTS + "(" + TABLE_BOOKS_FTS + ")"
+                + " VALUES('rebuild');");
+    }
+
+    /**
+     * Create the index for the catalog list on the books table.
+     * @param db
+     */
+    private static void createCatalogIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_NAME + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + ");");
+    }
+
+    /**
+     * Create the stock movements table and its index.
+     * @param db
+     */
+    private static void createStockMovements(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ( "
+                + StockMovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockMovementEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_REASON + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + INDEX_MOVEMENTS_BOOK + " ON "
+                + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_BOOK_ID + ", "
+                + StockMovementEntry._ID + ");");
+    }
+
+    /**
+     * Create the trigger that deletes the stock movements of a book when the book is deleted.
+     * @param db
+     */
+    private static void createStockMovementsTrigger(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + StockMovementEntry.TABLE_NAME + "_book_deleted"
+                + " AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.COLUMN_BOOK_ID + " = old." + BookEntry._ID + ";"
+                + " END;");
+    }
+
+    /**
+     * Returns the expression for the current stock of the given book row, such as the books table
+     * or the "old" or "new" row in a trigger.
+     */
+    private static String currentQuantity(String book) {
+        return "(" + book + "." + BookEntry.COLUMN_PRODUCT_QUANTITY + " + (SELECT IFNULL(SUM("
+                + StockMovementEntry.COLUMN_DELTA + "), 0) FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.TABLE_NAME + "."
+                + StockMovementEntry.COLUMN_BOOK_ID + " = " + book + "." + BookEntry._ID
+                + " AND " + StockMovementEntry.TABLE_NAME + "." + StockMovementEntry._ID
+                + " > " + book + "." + COLUMN_SNAPSHOT_MOVEMENT_ID + "))";
+    }
+
+    /**
+     * Create the inventory summary table.
+     * @param db
+     */
+    private static void createInventorySummary(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SummaryEntry.TABLE_NAME + " ( "
+                + SummaryEntry.COLUMN_GENRE + " INTEGER PRIMARY KEY, "
+                + SummaryEntry.COLUMN_TITLE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + SummaryEntry.COLUMN_UNIT_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + SummaryEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0);");
+    }
+
+    /**
+     * Count up the inventory summary from the books already in the database, into the empty
+     * summary table.
+     * @param db
+     */
+    private static void countInventorySummary(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + SummaryEntry.TABLE_NAME + " SELECT "
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", COUNT(*), SUM(" + CURRENT_QUANTITY
+                + "), SUM(" + BookEntry.COLUMN_PRODUCT_PRICE + " * " + CURRENT_QUANTITY
+                + ") FROM " + BookEntry.TABLE_NAME
+                + " GROUP BY " + BookEntry.COLUMN_PRODUCT_GENRE + ";");
+    }
+
+    /**
+     * Create the triggers that keep the inventory summary in step with the books and their stock
+     * movements. Each trigger only adds or takes away the contribution of the one book or
+     * movement that changed, so the summary never has to be counted up again.
+     * @param db
+     */
+    private static void createInventorySummaryTriggers(SQLiteDatabase db) {
+
+        String oldQuantity = currentQuantity("old");
+        String newQuantity = currentQuantity("new");
+        String addNewBook = addGenreRow("new")
+                + updateSummary("new", "+ 1", "+ " + newQuantity,
+                "+ new." + BookEntry.COLUMN_PRODUCT_PRICE + " * " + newQuantity);
+        String takeAwayOldBook = updateSummary("old", "- 1", "- " + oldQuantity,
+                "- old." + BookEntry.COLUMN_PRODUCT_PRICE + " * " + oldQuantity);
+
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_book_inserted AFTER INSERT ON "
+                + BookEntry.TABLE_NAME + " BEGIN " + addNewBook + " END;");
+
+        // The stock movements of the book are still there before it is deleted.
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_book_deleted BEFORE DELETE ON "
+                + BookEntry.TABLE_NAME + " BEGIN " + takeAwayOldBook + " END;");
+
+        // A book that moves genre or changes price is taken away and added again.
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_book_updated AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", " + BookEntry.COLUMN_PRODUCT_PRICE
+                + " ON " + BookEntry.TABLE_NAME
+                + " WHEN old." + BookEntry.COLUMN_PRODUCT_GENRE
+                + " != new." + BookEntry.COLUMN_PRODUCT_GENRE
+                + " OR old." + BookEntry.COLUMN_PRODUCT_PRICE
+                + " != new." + BookEntry.COLUMN_PRODUCT_PRICE
+                + " BEGIN " + takeAwayOldBook + " " + addNewBook + " END;");
+
+        // Otherwise only a change in stock counts. Compacting the stock movements moves the
+        // snapshot on without changing the stock, so it adds nothing.
+        String quantityChange = "(" + newQuantity + " - " + oldQuantity + ")";
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_stock_updated AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + COLUMN_SNAPSHOT_MOVEMENT_ID
+                + " ON " + BookEntry.TABLE_NAME
+                + " WHEN old." + BookEntry.COLUMN_PRODUCT_GENRE
+                + " = new." + BookEntry.COLUMN_PRODUCT_GENRE
+                + " AND old." + BookEntry.COLUMN_PRODUCT_PRICE
+                + " = new." + BookEntry.COLUMN_PRODUCT_PRICE
+                + " BEGIN " + updateSummary("new", "", "+ " + quantityChange,
+                "+ new." + BookEntry.COLUMN_PRODUCT_PRICE + " * " + quantityChange) + " END;");
+
+        // A stock movement changes the stock of its book.
+        String movedBook = "(SELECT %s FROM " + BookEntry.TABLE_NAME + " WHERE "
+                + BookEntry._ID + " = new." + StockMovementEntry.COLUMN_BOOK_ID + ")";
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_movement_inserted"
+                + " AFTER INSERT ON " + StockMovementEntry.TABLE_NAME + " BEGIN"
+                + " UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_UNIT_COUNT + " = " + SummaryEntry.COLUMN_UNIT_COUNT
+                + " + new." + StockMovementEntry.COLUMN_DELTA + ", "
+                + SummaryEntry.COLUMN_STOCK_VALUE + " = " + SummaryEntry.COLUMN_STOCK_VALUE
+                + " + new." + StockMovementEntry.COLUMN_DELTA + " * "
+                + String.format(movedBook, BookEntry.COLUMN_PRODUCT_PRICE)
+                + " WHERE " + SummaryEntry.COLUMN_GENRE + " = "
+                + String.format(movedBook, BookEntry.COLUMN_PRODUCT_GENRE) + "; END;");
+    }
+
+    /**
+     * Create the reorder queue table.
+     * @param db
+     */
+    private static void createLowStockQueue(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_LOW_STOCK + " ( "
+                + COLUMN_LOW_STOCK_BOOK_ID + " INTEGER PRIMARY KEY);");
+    }
+
+    /**
+     * Create the triggers that keep the reorder queue in step with the stock and reorder
+     * threshold of each book. Whenever either of them may have changed, the book is taken out of
+     * the queue and put back if it is still at or below its threshold.
+     * @param db
+     */
+    private static void createLowStockTriggers(SQLiteDatabase db) {
+
+        db.execSQL("CREATE TRIGGER " + TABLE_LOW_STOCK + "_book_inserted AFTER INSERT ON "
+                + BookEntry.TABLE_NAME + " BEGIN "
+                + requeueBook("new." + BookEntry._ID) + " END;");
+
+        // Compacting the stock movements also updates the snapshot, which requeues the book with
+        // the same stock as before.
+        db.execSQL("CREATE TRIGGER " + TABLE_LOW_STOCK + "_book_updated AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + COLUMN_SNAPSHOT_MOVEMENT_ID + ", "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " ON " + BookEntry.TABLE_NAME
+                + " BEGIN " + requeueBook("new." + BookEntry._ID) + " END;");
+
+        db.execSQL("CREATE TRIGGER " + TABLE_LOW_STOCK + "_book_deleted AFTER DELETE ON "
+                + BookEntry.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + TABLE_LOW_STOCK + " WHERE " + COLUMN_LOW_STOCK_BOOK_ID
+                + " = old." + BookEntry._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + TABLE_LOW_STOCK + "_movement_inserted AFTER INSERT ON "
+                + StockMovementEntry.TABLE_NAME + " BEGIN "
+                + requeueBook("new." + StockMovementEntry.COLUMN_BOOK_ID) + " END;");
+    }
+
+    /**
+     * Create the imports table and the table of records each import rejected, along with the
+     * trigger that deletes the rejections of an import when the import is deleted.
+     * @param db
+     */
+    private static void createImports(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ImportEntry.TABLE_NAME + " ( "
+                + ImportEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ImportEntry.COLUMN_SOURCE + " TEXT NOT NULL, "
+                + ImportEntry.COLUMN_STATUS + " INTEGER NOT NULL DEFAULT "
+                + ImportEntry.STATUS_RUNNING + ", "
+                + ImportEntry.COLUMN_RECORDS_READ + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_BOOKS_IMPORTED + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_RECORDS_REJECTED + " INTEGER NOT NULL DEFAULT 0, "
+                + ImportEntry.COLUMN_UPDATED + " INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("CREATE TABLE " + RejectionEntry.TABLE_NAME + " ( "
+                + RejectionEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + RejectionEntry.COLUMN_IMPORT_ID + " INTEGER NOT NULL, "
+                + RejectionEntry.COLUMN_RECORD_NUMBER + " INTEGER NOT NULL, "
+                + RejectionEntry.COLUMN_REASON + " TEXT NOT NULL);");
+        db.execSQL("CREATE INDEX " + INDEX_REJECTIONS_IMPORT + " ON "
+                + RejectionEntry.TABLE_NAME + " ("
+                + RejectionEntry.COLUMN_IMPORT_ID + ", "
+                + RejectionEntry.COLUMN_RECORD_NUMBER + ");");
+        db.execSQL("CREATE TRIGGER " + RejectionEntry.TABLE_NAME + "_import_deleted"
+                + " AFTER DELETE ON " + ImportEntry.TABLE_NAME + " BEGIN"
+                + " DELETE FROM " + RejectionEntry.TABLE_NAME
+                + " WHERE " + RejectionEntry.COLUMN_IMPORT_ID + " = old." + ImportEntry._ID + ";"
+                + " END;");
+    }
+
+    /**
+     * Returns the statements that take the book with the given ID out of the reorder queue, and
+     * put it back if its current stock is at or below its reorder threshold.
+     */
+    private static String requeueBook(String id) {
+        return "DELETE FROM " + TABLE_LOW_STOCK + " WHERE " + COLUMN_LOW_STOCK_BOOK_ID + " = "
+                + id + ";"
+                + " INSERT INTO " + TABLE_LOW_STOCK + " SELECT " + BookEntry._ID + " FROM "
+                + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = " + id
+                + " AND " + CURRENT_QUANTITY + " <= "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ";";
+    }
+
+    /**
+     * Returns the statement that adds the summary row for the genre of the given book row, if it
+     * isn't there yet.
+     */
+    private static String addGenreRow(String book) {
+        return "INSERT OR IGNORE INTO " + SummaryEntry.TABLE_NAME + " ("
+                + SummaryEntry.COLUMN_GENRE + ") VALUES (" + book + "."
+                + BookEntry.COLUMN_PRODUCT_GENRE + ");";
+    }
+
+    /**
+     * Returns the statement that changes the summary row for the genre of the given book row by
+     * the given changes to each of its counts.
+     */
+    private static String updateSummary(String book, String titleChange, String unitChange,
+                                        String valueChange) {
+        return "UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_TITLE_COUNT + " = " + SummaryEntry.COLUMN_TITLE_COUNT
+                + " " + titleChange + ", "
+                + SummaryEntry.COLUMN_UNIT_COUNT + " = " + SummaryEntry.COLUMN_UNIT_COUNT
+                + " " + unitChange + ", "
+                + SummaryEntry.COLUMN_STOCK_VALUE + " = " + SummaryEntry.COLUMN_STOCK_VALUE
+                + " " + valueChange
+                + " WHERE " + SummaryEntry.COLUMN_GENRE + " = " + book + "."
+                + BookEntry.COLUMN_PRODUCT_GENRE + ";";
+    }
+
+    /**
+     * Create the view books are read from, with the current stock of each book in place of its
+     * snapshot, and the name and phone number of its supplier under the book column names.
+     * @param db
+     */
+    private static void createBooksView(SQLiteDatabase db) {
+        String book = BookEntry.TABLE_NAME + ".";
+        String supplier = SupplierEntry.TABLE_NAME + ".";
+        db.execSQL("CREATE VIEW " + VIEW_BOOKS + " AS SELECT "
+                + book + BookEntry._ID + " AS " + BookEntry._ID + ", "
+                + book + BookEntry.COLUMN_PRODUCT_NAME + " AS " + BookEntry.COLUMN_PRODUCT_NAME
+                + ", "
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + CURRENT_QUANTITY + " AS " + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + supplier + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + supplier + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE + ", "
+                + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+                + " FROM " + BookEntry.TABLE_NAME + " JOIN " + SupplierEntry.TABLE_NAME
+                + " ON " + supplier + SupplierEntry._ID + " = "
+                + book + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + ";");
+    }
+
+    /**
+     * Create the secondary indexes on the books table, so lookups by genre, supplier or price
+     * don't have to scan the whole table. The stock is worked out from the movements, so no index
+     * on the books table can find books by it; the reorder queue keeps the ones low on stock.
+     * @param db
+     */
+    private static void createBookIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_GENRE + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_GENRE + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ");");
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_SUPPLIER + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + ");");
+        createPriceIndex(db);
+    }
+
+    /**
+     * Create the index for sorting books by price on the books table.
+     * @param db
+     */
+    private static void createPriceIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_BOOKS_PRICE + " ON " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ");");
+    }
+
+    /**
+     * Create the full-text search table over the book name.
+     * @param db
+     */
+    private static void createBooksFts(SQLiteDatabase db) {
+        createFts(db, TABLE_BOOKS_FTS, BookEntry.TABLE_NAME, BookEntry.COLUMN_PRODUCT_NAME);
+    }
+
+    /**
+     * Create a full-text search table over one text column of the given table, along with the
+     * triggers that keep it in step with the table. The update triggers only fire when the
+     * indexed column changes, so stock changes don't touch the search index.
+     * @param db
+     * @param ftsTable
+     * @param contentTable
+     * @param column
+     */
+    private static void createFts(SQLiteDatabase db, String ftsTable, String contentTable,
+                                  String column) {
+        String insertNewRow = "INSERT INTO " + ftsTable + "(docid, " + column + ")"
+                + " VALUES (new." + BaseColumns._ID + ", new." + column + ");";
+        String deleteOldRow = "DELETE FROM " + ftsTable
+                + " WHERE docid = old." + BaseColumns._ID + ";";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + ftsTable + " USING fts4(content=\""
+                + contentTable + "\", " + column + ");");
+
+        db.execSQL("CREATE TRIGGER " + ftsTable + "_after_insert AFTER INSERT ON "
+                + contentTable + " BEGIN " + insertNewRow + " END;");
+        db.execSQL("CREATE TRIGGER " + ftsTable + "_before_update BEFORE UPDATE OF "
+                + column + " ON " + contentTable + " BEGIN " + deleteOldRow + " END;");
+        db.execSQL("CREATE TRIGGER " + ftsTable + "_after_update AFTER UPDATE OF "
+                + column + " ON " + contentTable + " BEGIN " + insertNewRow + " END;");
+        db.execSQL("CREATE TRIGGER " + ftsTable + "_before_delete BEFORE DELETE ON "
+                + contentTable + " BEGIN " + deleteOldRow + " END;");
     }
 }
@@ -0,0 +1,196 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the whole catalog into a pipe, as CSV or JSON, for
+ * {@link BookProvider#openTypedAssetFile}. The books are read from the database in batches of
+ * {@link #BATCH_SIZE}, each starting straight after the ID of the last book written, and every
+ * book is encoded into the pipe as soon as it is read. Only one batch is held in memory at a time,
+ * so the export uses the same memory whatever the size of the catalog, and the reader can start
+ * on the first books while the rest are still being read.
+ *
+ * Each batch is read on its own, so books changed while the export runs may or may not be in it.
+ * The CSV has the same columns as {@link BookImporter} reads, so it can be imported again. Prices
+ * are written as amounts of the currency, such as 5.99, rather than the minor units they are kept
+ * in, in the CSV and the JSON alike.
+ */
+class BookExporter implements ContentProvider.PipeDataWriter<String> {
+
+    /** Tag for the log messages. */
+    private static final String LOG_TAG = BookExporter.class.getSimpleName();
+
+    /** Number of books read from the database at a time. */
+    static final int BATCH_SIZE = 500;
+
+    /** Size of the buffer the books are encoded into before they are written to the pipe. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Columns of each exported book, in the order they are written. */
+    private static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_GENRE,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE
+    };
+
+    /** Position of the price in {@link #COLUMNS}. */
+    private static final int PRICE = 3;
+
+    /** Database helper of the books. */
+    private final BookDbHelper mDbHelper;
+
+    /**
+     * Constructs a new {@link BookExporter}.
+     *
+     * @param dbHelper Database helper of the books.
+     */
+    BookExporter(BookDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Write every book into the given pipe, encoded as the given MIME type, which is one of
+     * {@link BookEntry#EXPORT_CSV_TYPE} or {@link BookEntry#EXPORT_JSON_TYPE}. This runs on the
+     * writer thread of {@link ContentProvider#openPipeHelper}, which closes the pipe afterwards.
+     */
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                Bundle opts, String args) {
+        boolean json = BookEntry.EXPORT_JSON_TYPE.equals(mimeType);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(output.getFileDescriptor()), "UTF-8"), BUFFER_SIZE);
+            if (json) {
+                writer.write('[');
+            } else {
+                writeCsvRecord(writer, COLUMNS);
+            }
+
+            SQLiteDatabase database = mDbHelper.getReadableDatabase();
+            String[] values = new String[COLUMNS.length];
+            long lastId = -1;
+            boolean first = true;
+            while (true) {
+                // Seek to the book after the last one written, so every batch costs the same.
+                Cursor cursor = database.query(BookDbHelper.VIEW_BOOKS, COLUMNS,
+                        BookEntry._ID + " > ?", new String[] {String.valueOf(lastId)}, null, null,
+                        BookEntry._ID, String.valueOf(BATCH_SIZE));
+                int count;
+                try {
+                    count = cursor.getCount();
+                    while (cursor.moveToNext()) {
+                        if (json) {
+                            writeJsonObject(writer, cursor, first);
+                        } else {
+                            for (int i = 0; i < COLUMNS.length; i++) {
+                                values[i] = i == PRICE ? getAmount(cursor) : cursor.getString(i);
+                            }
+                            writeCsvRecord(writer, values);
+                        }
+                        first = false;
+                        lastId = cursor.getLong(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (count < BATCH_SIZE) {
+                    break;
+                }
+            }
+
+            if (json) {
+                writer.write("\n]\n");
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // Most likely the reader closed the pipe before the end, so there is no one to tell.
+            Log.w(LOG_TAG, "Export to " + uri + " stopped", e);
+        }
+    }
+
+    /**
+     * Write the given fields as one CSV record. Fields holding a comma, quote or line break are
+     * quoted, with any quotes in them doubled.
+     */
+    private static void writeCsvRecord(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            String field = fields[i] != null ? fields[i] : "";
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Returns the price of the book at the current position of the cursor as an amount of the
+     * currency, which is also a valid JSON number.
+     */
+    private static String getAmount(Cursor cursor) {
+        return BookEntry.toAmount(cursor.getLong(PRICE)).toPlainString();
+    }
+
+    /**
+     * Write the book at the current position of the cursor as one JSON object, with a number for
+     * each number column and a string for each text column.
+     */
+    private static void writeJsonObject(Writer writer, Cursor cursor, boolean first)
+            throws IOException {
+        writer.write(first ? "\n{" : ",\n{");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            writer.write(JSONObject.quote(COLUMNS[i]));
+            writer.write(':');
+            if (i == PRICE) {
+                writer.write(getAmount(cursor));
+                continue;
+            }
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.write(Double.toString(cursor.getDouble(i)));
+                    break;
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.write("null");
+                    break;
+                default:
+                    writer.write(JSONObject.quote(cursor.getString(i)));
+                    break;
+            }
+        }
+        writer.write('}');
+    }
+}
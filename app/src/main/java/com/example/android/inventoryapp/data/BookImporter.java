@@ -0,0 +1,288 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.R;
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.ImportEntry;
+import com.example.android.inventoryapp.data.BookContract.RejectionEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Imports books from a CSV file into the provider. The file is streamed a record at a time, so
+ * it can be any size, and each record is checked by the same rules as the editor uses (see
+ * {@link BookValidator}). Records that break a rule are rejected and listed with the import.
+ *
+ * The books are written in chunks of {@link #CHUNK_SIZE} records, each in one batch together with
+ * the progress of the import. If the import is interrupted, importing the same file again skips
+ * the records that were already committed and carries on from there.
+ *
+ * The first record of the file names the columns, using the column names in {@link BookEntry}.
+ * The genre and reorder threshold columns may be left out.
+ */
+public class BookImporter {
+
+    /** Number of records written in each batch. */
+    public static final int CHUNK_SIZE = 500;
+
+    /** Columns read from each record, in the order of the indices in {@link #mapColumns}. */
+    private static final String[] COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_GENRE,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE
+    };
+
+    /** Positions in {@link #COLUMNS} of the columns a file may leave out. */
+    private static final int GENRE = 1;
+    private static final int REORDER_THRESHOLD = 4;
+
+    /** Columns read for an import that is carried on from where it was interrupted. */
+    private static final String[] PROGRESS_PROJECTION = {
+            ImportEntry._ID,
+            ImportEntry.COLUMN_RECORDS_READ,
+            ImportEntry.COLUMN_BOOKS_IMPORTED,
+            ImportEntry.COLUMN_RECORDS_REJECTED
+    };
+
+    /**
+     * Listener told about the progress of an import each time a chunk has been committed.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called once the given numbers of records read, books imported and records rejected
+         * have been committed.
+         */
+        void onProgress(long recordsRead, long booksImported, long recordsRejected);
+    }
+
+    /** Resolver the file is read through and the books are written to. */
+    private final ContentResolver mResolver;
+
+    /** Resources the reasons for rejecting records are read from. */
+    private final Resources mResources;
+
+    /** Number of records read, books imported and records rejected by the running import. */
+    private long mRecordsRead;
+    private long mBooksImported;
+    private long mRecordsRejected;
+
+    /**
+     * Constructs a new {@link BookImporter}.
+     *
+     * @param resolver  Resolver the file is read through and the books are written to.
+     * @param resources Resources the reasons for rejecting records are read from.
+     */
+    public BookImporter(ContentResolver resolver, Resources resources) {
+        mResolver = resolver;
+        mResources = resources;
+    }
+
+    /**
+     * Import the books in the CSV file at the given URI, carrying on from an earlier import of
+     * the same file that didn't finish. This reads the whole file, so it must not be called on
+     * the main thread. Return the content URI of the import, which holds its final state.
+     *
+     * @throws IOException if the file couldn't be read, or the books couldn't be written. The
+     *                     import can be carried on from the last chunk committed.
+     */
+    public Uri importBooks(Uri source, ProgressListener listener) throws IOException {
+        Uri importUri = startImport(source);
+
+        InputStream in = mResolver.openInputStream(source);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + source);
+        }
+        CsvReader reader = new CsvReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            // Find where each column is in the records, and give up if any are missing.
+            String[] header = reader.readRecord();
+            int[] columns = header != null ? mapColumns(header) : null;
+            if (columns == null) {
+                ArrayList<ContentProviderOperation> operations = new ArrayList<>(2);
+                addRejection(operations, importUri, 0, R.string.import_requires_columns);
+                commit(importUri, operations, ImportEntry.STATUS_FAILED);
+                return importUri;
+            }
+
+            // Skip the records committed before the import was interrupted.
+            for (long i = 0; i < mRecordsRead; i++) {
+                if (reader.readRecord() == null) {
+                    break;
+                }
+            }
+
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(CHUNK_SIZE + 1);
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                mRecordsRead++;
+                addRecord(operations, importUri, record, columns);
+                if (operations.size() == CHUNK_SIZE) {
+                    commit(importUri, operations, ImportEntry.STATUS_RUNNING);
+                    listener.onProgress(mRecordsRead, mBooksImported, mRecordsRejected);
+                }
+            }
+            commit(importUri, operations, ImportEntry.STATUS_FINISHED);
+            listener.onProgress(mRecordsRead, mBooksImported, mRecordsRejected);
+            return importUri;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the content URI of the unfinished import of the given file, with its progress
+     * read into the counts, or of a new import if there isn't one.
+     */
+    private Uri startImport(Uri source) {
+        Cursor cursor = mResolver.query(ImportEntry.CONTENT_URI, PROGRESS_PROJECTION,
+                ImportEntry.COLUMN_SOURCE + "=? AND " + ImportEntry.COLUMN_STATUS + "=?",
+                new String[] {source.toString(), String.valueOf(ImportEntry.STATUS_RUNNING)},
+                ImportEntry._ID + " DESC");
+        try {
+            if (cursor != null && cursor.moveToFirst()) {
+                mRecordsRead = cursor.getLong(1);
+                mBooksImported = cursor.getLong(2);
+                mRecordsRejected = cursor.getLong(3);
+                return ContentUris.withAppendedId(ImportEntry.CONTENT_URI, cursor.getLong(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        mRecordsRead = 0;
+        mBooksImported = 0;
+        mRecordsRejected = 0;
+        ContentValues values = new ContentValues();
+        values.put(ImportEntry.COLUMN_SOURCE, source.toString());
+        values.put(ImportEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        Uri importUri = mResolver.insert(ImportEntry.CONTENT_URI, values);
+        if (importUri == null) {
+            throw new IllegalStateException("Cannot start import of " + source);
+        }
+        return importUri;
+    }
+
+    /**
+     * Returns the position of each of the {@link #COLUMNS} in the given header, or -1 for a column
+     * that may be left out and isn't there. Return null if a column that is needed isn't there.
+     */
+    private static int[] mapColumns(String[] header) {
+        int[] columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = -1;
+            for (int j = 0; j < header.length; j++) {
+                if (COLUMNS[i].equals(header[j].trim().toLowerCase(Locale.ROOT))) {
+                    columns[i] = j;
+                    break;
+                }
+            }
+            if (columns[i] == -1 && i != GENRE && i != REORDER_THRESHOLD) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Add the operation that inserts the book in the given record, or that rejects the record if
+     * it breaks one of the rules for a book.
+     */
+    private void addRecord(ArrayList<ContentProviderOperation> operations, Uri importUri,
+                           String[] record, int[] columns) {
+        String name = getField(record, columns[0]);
+        String genreString = getField(record, columns[GENRE]);
+        String price = getField(record, columns[2]);
+        String quantity = getField(record, columns[3]);
+        String reorderThreshold = getField(record, columns[REORDER_THRESHOLD]);
+        String supplierName = getField(record, columns[5]);
+        String supplierPhone = getField(record, columns[6]);
+
+        // A genre that isn't a number is no genre at all, and is rejected as such.
+        int genre = BookEntry.GENRE_UNKNOWN;
+        if (!TextUtils.isEmpty(genreString)) {
+            try {
+                genre = Integer.parseInt(genreString);
+            } catch (NumberFormatException e) {
+                genre = -1;
+            }
+        }
+
+        int error = BookValidator.validate(name, genre, price, quantity, reorderThreshold,
+                supplierName, supplierPhone);
+        if (error != 0) {
+            addRejection(operations, importUri, mRecordsRead, error);
+            return;
+        }
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(BookValidator.toContentValues(name, genre, price, quantity,
+                        reorderThreshold, supplierName, supplierPhone))
+                .build());
+        mBooksImported++;
+    }
+
+    /**
+     * Returns the trimmed field at the given position of the record, or an empty string if the
+     * record is too short or the column isn't in the file.
+     */
+    private static String getField(String[] record, int column) {
+        return column >= 0 && column < record.length ? record[column].trim() : "";
+    }
+
+    /**
+     * Add the operation that lists the given record as rejected, for the reason with the given
+     * string resource ID.
+     */
+    private void addRejection(ArrayList<ContentProviderOperation> operations, Uri importUri,
+                              long recordNumber, int reason) {
+        operations.add(ContentProviderOperation.newInsert(
+                ImportEntry.buildRejectionsUri(ContentUris.parseId(importUri)))
+                .withValue(RejectionEntry.COLUMN_RECORD_NUMBER, recordNumber)
+                .withValue(RejectionEntry.COLUMN_REASON, mResources.getString(reason))
+                .build());
+        mRecordsRejected++;
+    }
+
+    /**
+     * Apply the given operations in one batch, together with the progress of the import and the
+     * given status, and clear them for the next chunk.
+     */
+    private void commit(Uri importUri, ArrayList<ContentProviderOperation> operations, int status)
+            throws IOException {
+        operations.add(ContentProviderOperation.newUpdate(importUri)
+                .withValue(ImportEntry.COLUMN_STATUS, status)
+                .withValue(ImportEntry.COLUMN_RECORDS_READ, mRecordsRead)
+                .withValue(ImportEntry.COLUMN_BOOKS_IMPORTED, mBooksImported)
+                .withValue(ImportEntry.COLUMN_RECORDS_REJECTED, mRecordsRejected)
+                .withValue(ImportEntry.COLUMN_UPDATED, System.currentTimeMillis())
+                .build());
+        try {
+            mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            throw new IOException("Cannot write books for " + importUri, e);
+        } finally {
+            operations.clear();
+        }
+    }
+}
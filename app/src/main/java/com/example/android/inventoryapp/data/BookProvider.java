@@ -1,18 +1,41 @@
 package com.example.android.inventoryapp.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.Toast;
 
 import com.example.android.inventoryapp.R;
 import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.ImportEntry;
+import com.example.android.inventoryapp.data.BookContract.RejectionEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SummaryEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * {@link ContentProvider} for book store inventory app.
@@ -27,6 +50,38 @@ public class BookProvider extends ContentProvider {
      */
     private BookDbHelper mDbHelper;
 
+    /**
+     * Gathers the change notifications, so each changed URI is only notified once per short
+     * window or per committed batch.
+     */
+    private NotificationCoalescer mNotifier;
+
+    /**
+     * Cache of the books most recently read by ID. Every write below is bracketed by
+     * {@link BookRowCache#beginWrite()} and {@link BookRowCache#endWrite()}, and removes the
+     * books it changes from the cache.
+     */
+    private BookRowCache mRowCache;
+
+    /** Counts the calls made to the provider, and how long they took. */
+    private ProviderMetrics mMetrics;
+
+    /**
+     * Records the calls that take too long, with their query plans, once it has been switched on.
+     * Every query and write is bracketed by {@link SlowQueryLog#begin()} and
+     * {@link SlowQueryLog#end}.
+     */
+    private SlowQueryLog mSlowQueries;
+
+    /** Folds the stock movements into the stock snapshots in the background. */
+    private StockCompactor mCompactor;
+
+    /** Writes the catalog into the pipe of an export. */
+    private BookExporter mExporter;
+
+    /** Backs the database up and restores it. */
+    private BookBackup mBackup;
+
     /**
      * URI matcher code for the content URI for the books table.
      */
@@ -35,14 +90,157 @@ public class BookProvider extends ContentProvider {
     /** URI matcher code for the content URI for a single book in the books table. */
     private static final int BOOKS_ID = 101;
 
+    /** URI matcher code for the content URI to adjust the stock quantity of a single book. */
+    private static final int BOOKS_ID_ADJUST = 102;
+
+    /** URI matcher code for the content URI to search the books table. */
+    private static final int BOOKS_SEARCH = 103;
+
+    /** URI matcher code for the content URI for the stock movements of a single book. */
+    private static final int BOOKS_ID_MOVEMENTS = 104;
+
+    /** URI matcher code for the content URI for the books that are due to be reordered. */
+    private static final int BOOKS_LOW_STOCK = 105;
+
+    /** URI matcher code for the content URI to export the whole catalog from. */
+    private static final int BOOKS_EXPORT = 106;
+
+    /** MIME types the catalog can be exported as, the default first. */
+    private static final String[] EXPORT_TYPES = {
+            BookEntry.EXPORT_CSV_TYPE,
+            BookEntry.EXPORT_JSON_TYPE
+    };
+
+    /** Query parameters of the books content URI that page, sort or filter the books. */
+    private static final String[] CATALOG_QUERY_PARAMETERS = {
+            BookContract.QUERY_PARAMETER_AFTER,
+            BookContract.QUERY_PARAMETER_UNTIL,
+            BookContract.QUERY_PARAMETER_LIMIT,
+            BookContract.QUERY_PARAMETER_SORT,
+            BookContract.QUERY_PARAMETER_GENRE,
+            BookContract.QUERY_PARAMETER_MIN_PRICE,
+            BookContract.QUERY_PARAMETER_MAX_PRICE,
+            BookContract.QUERY_PARAMETER_IN_STOCK
+    };
+
+    /** URI matcher code for the content URI for the stock summary of each genre. */
+    private static final int SUMMARY = 200;
+
+    /** URI matcher code for the content URI for the stock summary of a single genre. */
+    private static final int SUMMARY_GENRE = 201;
+
+    /** URI matcher code for the content URI for the stock summary of all genres together. */
+    private static final int SUMMARY_TOTAL = 202;
+
+    /** URI matcher code for the content URI for the imports table. */
+    private static final int IMPORTS = 300;
+
+    /** URI matcher code for the content URI for a single import in the imports table. */
+    private static final int IMPORTS_ID = 301;
+
+    /** URI matcher code for the content URI for the records rejected by a single import. */
+    private static final int IMPORTS_ID_REJECTIONS = 302;
+
+    /** URI matcher code for the content URI for the suppliers table. */
+    private static final int SUPPLIERS = 400;
+
+    /** URI matcher code for the content URI for a single supplier in the suppliers table. */
+    private static final int SUPPLIERS_ID = 401;
+
+    /** URI matcher code for the content URI for the books of a single supplier. */
+    private static final int SUPPLIERS_ID_BOOKS = 402;
+
+    /**
+     * Columns of the stock summary of all genres together, each summed over the genre rows.
+     */
+    private static final String[] SUMMARY_TOTAL_COLUMNS = {
+            "IFNULL(SUM(" + SummaryEntry.COLUMN_TITLE_COUNT + "), 0) AS "
+                    + SummaryEntry.COLUMN_TITLE_COUNT,
+            "IFNULL(SUM(" + SummaryEntry.COLUMN_UNIT_COUNT + "), 0) AS "
+                    + SummaryEntry.COLUMN_UNIT_COUNT,
+            "IFNULL(SUM(" + SummaryEntry.COLUMN_STOCK_VALUE + "), 0) AS "
+                    + SummaryEntry.COLUMN_STOCK_VALUE
+    };
+
+    /**
+     * Tables joined for the books to reorder: each book in the reorder queue joined with its row
+     * in the books view. The queue is read in full and each book looked up by its ID, so only the
+     * books in the queue are read.
+     */
+    private static final String LOW_STOCK_TABLES = BookDbHelper.TABLE_LOW_STOCK + " JOIN "
+            + BookDbHelper.VIEW_BOOKS + " ON " + BookDbHelper.VIEW_BOOKS + "." + BookEntry._ID
+            + " = " + BookDbHelper.TABLE_LOW_STOCK + "." + BookDbHelper.COLUMN_LOW_STOCK_BOOK_ID;
+
+    /**
+     * Condition on the books view for the books whose name matches an FTS match expression (?).
+     */
+    private static final String NAME_MATCHES = BookEntry._ID + " IN (SELECT docid FROM "
+            + BookDbHelper.TABLE_BOOKS_FTS + " WHERE " + BookDbHelper.TABLE_BOOKS_FTS
+            + " MATCH ?)";
+
+    /**
+     * Condition on the books view for the books whose supplier name matches an FTS match
+     * expression (?).
+     */
+    private static final String SUPPLIER_MATCHES = BookEntry.COLUMN_PRODUCT_SUPPLIER_ID
+            + " IN (SELECT docid FROM " + BookDbHelper.TABLE_SUPPLIERS_FTS + " WHERE "
+            + BookDbHelper.TABLE_SUPPLIERS_FTS + " MATCH ?)";
+
+    /**
+     * Default sort order for search results, with the books whose own name matches every word
+     * of the search (?) first, as they are the most relevant.
+     */
+    private static final String SEARCH_SORT_ORDER = NAME_MATCHES + " DESC, "
+            + BookEntry.COLUMN_PRODUCT_NAME;
+
     /** UriMatcher object */
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    /** URI pattern of each matcher code, which the metrics are broken down by. */
+    private static final SparseArray<String> sUriPatterns = new SparseArray<>();
+
     // Static initialiser. This is run the first time anything is called from this class.
     static {
-        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS, BOOKS);
+        addUri(BookContract.PATH_BOOKS, BOOKS);
+
+        addUri(BookContract.PATH_BOOKS + "/#", BOOKS_ID);
+
+        addUri(BookContract.PATH_BOOKS + "/#/" + BookContract.PATH_ADJUST, BOOKS_ID_ADJUST);
+
+        addUri(BookContract.PATH_BOOKS + "/" + BookContract.PATH_SEARCH + "/*", BOOKS_SEARCH);
 
-        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#", BOOKS_ID);
+        addUri(BookContract.PATH_BOOKS + "/#/" + BookContract.PATH_MOVEMENTS, BOOKS_ID_MOVEMENTS);
+
+        addUri(BookContract.PATH_BOOKS + "/" + BookContract.PATH_LOW_STOCK, BOOKS_LOW_STOCK);
+
+        addUri(BookContract.PATH_BOOKS + "/" + BookContract.PATH_EXPORT, BOOKS_EXPORT);
+
+        addUri(BookContract.PATH_SUMMARY, SUMMARY);
+
+        addUri(BookContract.PATH_SUMMARY + "/#", SUMMARY_GENRE);
+
+        addUri(BookContract.PATH_SUMMARY + "/" + BookContract.PATH_TOTAL, SUMMARY_TOTAL);
+
+        addUri(BookContract.PATH_IMPORTS, IMPORTS);
+
+        addUri(BookContract.PATH_IMPORTS + "/#", IMPORTS_ID);
+
+        addUri(BookContract.PATH_IMPORTS + "/#/"
+                + BookContract.PATH_REJECTIONS, IMPORTS_ID_REJECTIONS);
+
+        addUri(BookContract.PATH_SUPPLIERS, SUPPLIERS);
+
+        addUri(BookContract.PATH_SUPPLIERS + "/#", SUPPLIERS_ID);
+
+        addUri(BookContract.PATH_SUPPLIERS + "/#/" + BookContract.PATH_BOOKS, SUPPLIERS_ID_BOOKS);
+    }
+
+    /**
+     * Add a URI pattern to the matcher with the given code, and keep it for the metrics.
+     */
+    private static void addUri(String path, int code) {
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, path, code);
+        sUriPatterns.put(code, path);
     }
 
     /**
@@ -50,41 +248,211 @@ public class BookProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
-        mDbHelper = new BookDbHelper(getContext());
+        // The slow-query log creates the cursors, so it sees the SQL of every query.
+        mSlowQueries = new SlowQueryLog(sUriPatterns);
+        mDbHelper = new BookDbHelper(getContext(), mSlowQueries);
+        mNotifier = new NotificationCoalescer(getContext().getContentResolver());
+        mRowCache = new BookRowCache();
+        mCompactor = new StockCompactor(mDbHelper);
+        mExporter = new BookExporter(mDbHelper);
+        mBackup = new BookBackup(mDbHelper);
+        mMetrics = new ProviderMetrics(sUriPatterns);
         return true;
     }
 
+    /**
+     * Give the memory held by the cached books back when the system is running low.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mRowCache.removeAll();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mRowCache.removeAll();
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments,
-     * and sort order.
+     * and sort order. The database uses write-ahead logging, so queries read the last committed
+     * data and never wait for a write in progress.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Perform the query for the given URI, as above, until the given signal is cancelled. Queries
+     * that can read many books, such as the catalog, a search or the books of a supplier, hand
+     * the signal on to SQLite, which then stops reading as soon as it is cancelled and throws an
+     * {@link android.os.OperationCanceledException}, from here or from the cursor as its rows are
+     * read. Loaders cancel the signal when their query is no longer wanted.
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        // Figure out if the URI matcher can match the URI to a specific code.
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        mSlowQueries.begin();
+        try {
+            Cursor cursor = runQuery(match, uri, projection, selection, selectionArgs, sortOrder,
+                    cancellationSignal);
+            // SQLite does most of the work of a scan or a sort while the first rows are read, so
+            // while slow queries are being recorded read them here, where they are timed. A
+            // caller in another process would have them read straight away in any case.
+            int rows = 0;
+            if (cursor != null && mSlowQueries.isEnabled()) {
+                rows = cursor.getCount();
+            }
+            mMetrics.record(match, ProviderMetrics.QUERY, start, 0);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.QUERY, uri, selection, sortOrder,
+                    start, rows);
+            return cursor;
+        } catch (RuntimeException e) {
+            // A query cancelled by its caller hasn't failed, it just isn't wanted any more.
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                mMetrics.record(match, ProviderMetrics.QUERY, start, 0);
+            } else {
+                mMetrics.recordFailure(match, ProviderMetrics.QUERY, start);
+            }
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.QUERY, uri, selection, sortOrder,
+                    start, -1);
+            throw e;
+        }
+    }
+
+    /**
+     * Perform the query for the given URI, which matched the given code, until the given signal,
+     * which may be null, is cancelled.
+     */
+    private Cursor runQuery(int match, Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder,
+                            CancellationSignal cancellationSignal) {
         // Get readable database.
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query.
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code.
-        int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                // For the BOOKS code, query the books table directly with the given
+                if (isCatalogQuery(uri)) {
+                    // If the URI asks for a page of books, or sorts or filters them, then query
+                    // just those books. The notification URI is the catalog URI, which hears of
+                    // changes to the whole books table but not of changes to a single book, so
+                    // selling one book doesn't reload every page.
+                    cursor = queryCatalog(database, uri, projection, selection, selectionArgs,
+                            cancellationSignal);
+                    cursor.setNotificationUri(getContext().getContentResolver(),
+                            BookEntry.CATALOG_URI);
+                    return cursor;
+                }
+                // For the BOOKS code, query the books view directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the pets table.
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = query(database, BookDbHelper.VIEW_BOOKS, projection, selection,
+                        selectionArgs, sortOrder, null, cancellationSignal);
                 break;
             case BOOKS_ID:
-                // For the BOOKS_ID code, extract out the ID from the URI.
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
+                // For the BOOKS_ID code, read the book from the cache if it's there, or from the
+                // database if not.
+                cursor = queryBook(database, ContentUris.parseId(uri), projection, sortOrder);
+                break;
+            case BOOKS_SEARCH:
+                // For the BOOKS_SEARCH code, run a full-text search for the text at the end of
+                // the URI. Any book can change the results, so listen to the whole books table.
+                cursor = searchBooks(database, uri.getLastPathSegment(), projection, sortOrder,
+                        cancellationSignal);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        BookEntry.CONTENT_URI);
+                return cursor;
+            case BOOKS_ID_MOVEMENTS:
+                // For the BOOKS_ID_MOVEMENTS code, query the stock movements of the book, most
+                // recent first unless another order is given. The ID is the second segment.
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = StockMovementEntry._ID + " DESC";
+                }
+                cursor = query(database, StockMovementEntry.TABLE_NAME, projection,
+                        StockMovementEntry.COLUMN_BOOK_ID + "=?",
+                        new String[] {uri.getPathSegments().get(1)}, sortOrder, null,
+                        cancellationSignal);
+                break;
+            case BOOKS_LOW_STOCK:
+                // For the BOOKS_LOW_STOCK code, read the books in the reorder queue, grouped by
+                // supplier unless another order is given. Without a projection, only the book
+                // columns are returned. Any book can join or leave the queue, so listen to the
+                // whole books table.
+                if (projection == null) {
+                    projection = new String[] {BookDbHelper.VIEW_BOOKS + ".*"};
+                }
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = BookEntry.LOW_STOCK_SORT_ORDER;
+                }
+                cursor = query(database, LOW_STOCK_TABLES, projection, selection, selectionArgs,
+                        sortOrder, null, cancellationSignal);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        BookEntry.CONTENT_URI);
+                return cursor;
+            case SUMMARY:
+            case SUMMARY_GENRE:
+            case SUMMARY_TOTAL:
+                // For the summary codes, read the inventory summary, which is kept up to date as
+                // the books change. It changes with any book, so listen to the whole books table.
+                cursor = querySummary(database, match, uri, projection, selection,
+                        selectionArgs, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        BookEntry.CONTENT_URI);
+                return cursor;
+            case IMPORTS:
+                cursor = query(database, ImportEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null, cancellationSignal);
+                break;
+            case IMPORTS_ID:
+                cursor = database.query(ImportEntry.TABLE_NAME, projection,
+                        ImportEntry._ID + "=?",
+                        new String[] {String.valueOf(ContentUris.parseId(uri))},
+                        null, null, sortOrder);
+                break;
+            case IMPORTS_ID_REJECTIONS:
+                // For the IMPORTS_ID_REJECTIONS code, query the records rejected by the import,
+                // in the order they appear in the file unless another order is given.
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = RejectionEntry.COLUMN_RECORD_NUMBER;
+                }
+                cursor = query(database, RejectionEntry.TABLE_NAME, projection,
+                        RejectionEntry.COLUMN_IMPORT_ID + "=?",
+                        new String[] {uri.getPathSegments().get(1)}, sortOrder, null,
+                        cancellationSignal);
+                break;
+            case SUPPLIERS:
+                cursor = query(database, SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null, cancellationSignal);
+                break;
+            case SUPPLIERS_ID:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection,
+                        SupplierEntry._ID + "=?",
+                        new String[] {String.valueOf(ContentUris.parseId(uri))},
                         null, null, sortOrder);
                 break;
+            case SUPPLIERS_ID_BOOKS:
+                // For the SUPPLIERS_ID_BOOKS code, query the books of the supplier, with the same
+                // columns as the books URI. The ID is the second segment. The books change along
+                // with the rest of the books table, so listen to all of it.
+                cursor = query(database, BookDbHelper.VIEW_BOOKS, projection,
+                        BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + "=?",
+                        new String[] {uri.getPathSegments().get(1)}, sortOrder, null,
+                        cancellationSignal);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        BookEntry.CONTENT_URI);
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -97,47 +465,553 @@ public class BookProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Query the given table, as {@link SQLiteDatabase#query(String, String[], String, String[],
+     * String, String, String, String)} does, until the given signal is cancelled. The signal is
+     * always null before Jelly Bean, which can't cancel queries, as nothing there passes one in.
+     */
+    private static Cursor query(SQLiteDatabase database, String table, String[] projection,
+                                String selection, String[] selectionArgs, String sortOrder,
+                                String limit, CancellationSignal cancellationSignal) {
+        if (cancellationSignal == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return database.query(table, projection, selection, selectionArgs, null, null,
+                    sortOrder, limit);
+        }
+        return database.query(false, table, projection, selection, selectionArgs, null, null,
+                sortOrder, limit, cancellationSignal);
+    }
+
+    /**
+     * Query the book with the given ID. If the projection only holds book columns, the book is
+     * served from the row cache, and on a miss the whole row is read and cached for next time.
+     */
+    private Cursor queryBook(SQLiteDatabase database, long id, String[] projection,
+                             String sortOrder) {
+        String selection = BookEntry._ID + "=?";
+        String[] selectionArgs = new String[] {String.valueOf(id)};
+
+        // Other columns, such as expressions, can't be served from the cache.
+        if (!BookRowCache.canServe(projection)) {
+            return database.query(BookDbHelper.VIEW_BOOKS, projection, selection, selectionArgs,
+                    null, null, sortOrder);
+        }
+
+        Cursor cursor = mRowCache.query(id, projection);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        // Take the generation before reading, so the row isn't cached if a write gets in between.
+        long generation = mRowCache.getGeneration();
+        Object[] row = null;
+        Cursor rowCursor = database.query(BookDbHelper.VIEW_BOOKS, BookRowCache.COLUMNS,
+                selection, selectionArgs, null, null, null);
+        try {
+            if (rowCursor.moveToFirst()) {
+                row = BookRowCache.readRow(rowCursor);
+                mRowCache.put(row, generation);
+            }
+        } finally {
+            rowCursor.close();
+        }
+        return BookRowCache.createCursor(row, projection);
+    }
+
+    /**
+     * Query the inventory summary for the given summary URI match code. The summary has one row
+     * per genre, so this reads at most a handful of rows whatever the size of the catalog.
+     */
+    private static Cursor querySummary(SQLiteDatabase database, int match, Uri uri,
+                                       String[] projection, String selection,
+                                       String[] selectionArgs, String sortOrder) {
+        switch (match) {
+            case SUMMARY:
+                return database.query(SummaryEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+            case SUMMARY_GENRE:
+                return database.query(SummaryEntry.TABLE_NAME, projection,
+                        SummaryEntry.COLUMN_GENRE + "=?",
+                        new String[] {String.valueOf(ContentUris.parseId(uri))},
+                        null, null, null);
+            default:
+                // The columns are always the sums of the genre rows.
+                return database.query(SummaryEntry.TABLE_NAME, SUMMARY_TOTAL_COLUMNS, null, null,
+                        null, null, null);
+        }
+    }
+
+    /**
+     * Returns whether the given books URI asks for a page of books, or sorts or filters them
+     * with query parameters.
+     */
+    private static boolean isCatalogQuery(Uri uri) {
+        for (String name : CATALOG_QUERY_PARAMETERS) {
+            if (uri.getQueryParameter(name) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Query the books described by the query parameters of the given URI. The sort order and
+     * filters are turned into SQL here, with every value passed as an argument, so nothing in the
+     * URI ends up in the SQL itself. The books are in the order of the sort parameter, then in
+     * {@link BookEntry#PAGE_SORT_ORDER}, and a page is found by seeking in the index of that
+     * order to the page keys rather than by skipping rows, so every page costs the same
+     * whichever part of the catalog it comes from.
+     */
+    private Cursor queryCatalog(SQLiteDatabase database, Uri uri, String[] projection,
+                                String selection, String[] selectionArgs,
+                                CancellationSignal cancellationSignal) {
+        StringBuilder where = new StringBuilder();
+        ArrayList<String> whereArgs = new ArrayList<>();
+        if (!TextUtils.isEmpty(selection)) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                Collections.addAll(whereArgs, selectionArgs);
+            }
+        }
+
+        // Only books of the given genres, which the genre index can look up one by one.
+        List<String> genres = uri.getQueryParameters(BookContract.QUERY_PARAMETER_GENRE);
+        if (!genres.isEmpty()) {
+            StringBuilder condition = new StringBuilder(BookEntry.COLUMN_PRODUCT_GENRE)
+                    .append(" IN (");
+            for (int i = 0; i < genres.size(); i++) {
+                condition.append(i == 0 ? "?" : ", ?");
+                whereArgs.add(String.valueOf(parseGenre(uri, genres.get(i))));
+            }
+            appendCondition(where, condition.append(')').toString());
+        }
+
+        // Only books within the price range, which the price index can seek to.
+        String minPrice = uri.getQueryParameter(BookContract.QUERY_PARAMETER_MIN_PRICE);
+        if (minPrice != null) {
+            appendCondition(where, BookEntry.COLUMN_PRODUCT_PRICE + " >= ?");
+            whereArgs.add(String.valueOf(parsePrice(uri, minPrice)));
+        }
+        String maxPrice = uri.getQueryParameter(BookContract.QUERY_PARAMETER_MAX_PRICE);
+        if (maxPrice != null) {
+            appendCondition(where, BookEntry.COLUMN_PRODUCT_PRICE + " <= ?");
+            whereArgs.add(String.valueOf(parsePrice(uri, maxPrice)));
+        }
+
+        // Only books with some stock left.
+        if (uri.getBooleanQueryParameter(BookContract.QUERY_PARAMETER_IN_STOCK, false)) {
+            appendCondition(where, BookEntry.COLUMN_PRODUCT_QUANTITY + " > 0");
+        }
+
+        // Only books after the "after" key. The first condition is the one the index can seek on.
+        String sortColumn = getSortColumn(uri);
+        String afterKey = uri.getQueryParameter(BookContract.QUERY_PARAMETER_AFTER);
+        if (afterKey != null) {
+            appendKeyCondition(where, whereArgs, sortColumn, parsePageKey(sortColumn, afterKey),
+                    ">");
+        }
+
+        // Only books up to and including the "until" key.
+        String untilKey = uri.getQueryParameter(BookContract.QUERY_PARAMETER_UNTIL);
+        if (untilKey != null) {
+            appendKeyCondition(where, whereArgs, sortColumn, parsePageKey(sortColumn, untilKey),
+                    "<");
+        }
+
+        // Check the limit is a positive number, as it is added to the SQL as it is.
+        String limit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+        if (limit != null) {
+            try {
+                if (Integer.parseInt(limit) <= 0) {
+                    throw new IllegalArgumentException("Page limit must be positive in " + uri);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page limit in " + uri);
+            }
+        }
+
+        String sortOrder = sortColumn == null ? BookEntry.PAGE_SORT_ORDER
+                : sortColumn + ", " + BookEntry.PAGE_SORT_ORDER;
+        return query(database, BookDbHelper.VIEW_BOOKS, projection, where.toString(),
+                whereArgs.toArray(new String[whereArgs.size()]), sortOrder, limit,
+                cancellationSignal);
+    }
+
+    /**
+     * Returns the column the given books URI is sorted by ahead of
+     * {@link BookEntry#PAGE_SORT_ORDER}, or null if it is sorted by name. The column comes from
+     * a fixed list, never from the URI itself.
+     */
+    private static String getSortColumn(Uri uri) {
+        String sort = uri.getQueryParameter(BookContract.QUERY_PARAMETER_SORT);
+        if (sort == null) {
+            return null;
+        }
+        switch (sort) {
+            case BookContract.SORT_NAME:
+                return null;
+            case BookContract.SORT_PRICE:
+                return BookEntry.COLUMN_PRODUCT_PRICE;
+            case BookContract.SORT_QUANTITY:
+                return BookEntry.COLUMN_PRODUCT_QUANTITY;
+            case BookContract.SORT_GENRE:
+                return BookEntry.COLUMN_PRODUCT_GENRE;
+            default:
+                throw new IllegalArgumentException("Invalid sort order in " + uri);
+        }
+    }
+
+    /**
+     * Returns the given genre query parameter of the given URI as a genre.
+     */
+    private static int parseGenre(Uri uri, String genre) {
+        try {
+            int value = Integer.parseInt(genre);
+            if (BookEntry.isValidGenre(value)) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid genre in " + uri);
+    }
+
+    /**
+     * Returns the given price query parameter of the given URI as a price in minor units.
+     */
+    private static long parsePrice(Uri uri, String price) {
+        try {
+            long value = Long.parseLong(price);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid price in " + uri);
+    }
+
+    /**
+     * Append the condition for the books after a page key, if the given comparison is ">", or up
+     * to and including it, if it is "<", where the books are sorted by the given column, or by
+     * name if it is null. The key is split up by {@link #parsePageKey}. The first condition is
+     * the one the index can seek on.
+     */
+    private static void appendKeyCondition(StringBuilder where, ArrayList<String> whereArgs,
+                                           String sortColumn, String[] key, String comparison) {
+        String name = BookEntry.COLUMN_PRODUCT_NAME;
+        String orEqual = comparison + "=";
+        String idComparison = BookEntry._ID + " " + (comparison.equals(">") ? ">" : "<=") + " ?";
+        if (sortColumn == null) {
+            appendCondition(where, name + " " + orEqual + " ? AND (" + name + " " + comparison
+                    + " ? OR " + idComparison + ")");
+            Collections.addAll(whereArgs, key[0], key[0], key[1]);
+            return;
+        }
+
+        // The sort value is cast, as the current quantity is worked out by an expression, which
+        // SQLite would otherwise compare with the text argument as text.
+        String value = "CAST(? AS INTEGER)";
+        appendCondition(where, sortColumn + " " + orEqual + " " + value + " AND (" + sortColumn
+                + " " + comparison + " " + value + " OR " + name + " " + comparison + " ? OR ("
+                + name + " = ? AND " + idComparison + "))");
+        Collections.addAll(whereArgs, key[0], key[0], key[1], key[1], key[2]);
+    }
+
+    /**
+     * Split a page key into its parts: the book name and ID if it was made by
+     * {@link BookEntry#buildPageKey(String, long)} for books sorted by name, which the given sort
+     * column is null for, or the sort value, name and ID otherwise.
+     */
+    private static String[] parsePageKey(String sortColumn, String pageKey) {
+        // The name may contain commas itself, so the ID is whatever follows the last one, and
+        // the sort value is whatever comes before the first one.
+        int first = pageKey.indexOf(',');
+        int last = pageKey.lastIndexOf(',');
+        if (first < 0 || (sortColumn != null && first == last)) {
+            throw new IllegalArgumentException("Invalid page key " + pageKey);
+        }
+        String id = pageKey.substring(last + 1);
+        try {
+            Long.parseLong(id);
+            if (sortColumn != null) {
+                Long.parseLong(pageKey.substring(0, first));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page key " + pageKey);
+        }
+        if (sortColumn == null) {
+            return new String[]{pageKey.substring(0, last), id};
+        }
+        return new String[]{pageKey.substring(0, first), pageKey.substring(first + 1, last), id};
+    }
+
+    /**
+     * Append a condition to a WHERE clause, joining it to any earlier conditions with AND.
+     */
+    private static void appendCondition(StringBuilder where, String condition) {
+        if (where.length() != 0) {
+            where.append(" AND ");
+        }
+        where.append('(').append(condition).append(')');
+    }
+
+    /**
+     * Search the books for the given text, using the full-text search tables. Each word of the
+     * text is matched as a prefix against the book name and the supplier name, and every word has
+     * to match one or the other. Unless a sort order is given, the most relevant books come first.
+     */
+    private Cursor searchBooks(SQLiteDatabase database, String text, String[] projection,
+                               String sortOrder, CancellationSignal cancellationSignal) {
+        // If the text doesn't contain any words, then nothing can match it.
+        ArrayList<String> terms = buildMatchTerms(text);
+        if (terms.isEmpty()) {
+            return database.query(BookDbHelper.VIEW_BOOKS, projection, "0", null, null, null,
+                    sortOrder);
+        }
+
+        // The name and the supplier name are in separate search tables, so each word is looked
+        // up in both. SQLite reads the books matching the first word from each table and
+        // merges them, so only those books are read.
+        StringBuilder where = new StringBuilder();
+        ArrayList<String> whereArgs = new ArrayList<>();
+        for (String term : terms) {
+            appendCondition(where, NAME_MATCHES + " OR " + SUPPLIER_MATCHES);
+            Collections.addAll(whereArgs, term, term);
+        }
+        if (TextUtils.isEmpty(sortOrder)) {
+            sortOrder = SEARCH_SORT_ORDER;
+            whereArgs.add(TextUtils.join(" ", terms));
+        }
+
+        return query(database, BookDbHelper.VIEW_BOOKS, projection, where.toString(),
+                whereArgs.toArray(new String[whereArgs.size()]), sortOrder, null,
+                cancellationSignal);
+    }
+
+    /**
+     * Turn the text typed by the user into FTS match terms, one for each word, which match the
+     * start of a word in the book. Anything that isn't a letter or a digit is dropped, so the text
+     * can't inject FTS operators. Return an empty list if there are no words in the text.
+     */
+    private static ArrayList<String> buildMatchTerms(String text) {
+        ArrayList<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() != 0) {
+                // Lower case words can't be mistaken for the AND, OR and NOT operators.
+                terms.add(word.toLowerCase(Locale.ROOT) + '*');
+            }
+        }
+        return terms;
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
     @Override
     public String getType(Uri uri) {
-        final int match = sUriMatcher.match(uri);
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        try {
+            String type = getType(match, uri);
+            mMetrics.record(match, ProviderMetrics.GET_TYPE, start, 0);
+            return type;
+        } catch (RuntimeException e) {
+            mMetrics.recordFailure(match, ProviderMetrics.GET_TYPE, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the MIME type of data for the content URI, which matched the given code.
+     */
+    private static String getType(int match, Uri uri) {
         switch (match) {
             case BOOKS:
+            case BOOKS_SEARCH:
+            case BOOKS_LOW_STOCK:
                 return BookEntry.CONTENT_LIST_TYPE;
             case BOOKS_ID:
+            case BOOKS_ID_ADJUST:
                 return  BookEntry.CONTENT_ITEM_TYPE;
+            case BOOKS_ID_MOVEMENTS:
+                return StockMovementEntry.CONTENT_LIST_TYPE;
+            case BOOKS_EXPORT:
+                return BookEntry.EXPORT_CSV_TYPE;
+            case SUMMARY:
+                return SummaryEntry.CONTENT_LIST_TYPE;
+            case SUMMARY_GENRE:
+            case SUMMARY_TOTAL:
+                return SummaryEntry.CONTENT_ITEM_TYPE;
+            case IMPORTS:
+                return ImportEntry.CONTENT_LIST_TYPE;
+            case IMPORTS_ID:
+                return ImportEntry.CONTENT_ITEM_TYPE;
+            case IMPORTS_ID_REJECTIONS:
+                return RejectionEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS_ID_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri + " with match " + match);
         }
     }
 
+    /**
+     * Returns the MIME types the data at the given URI can be streamed as, that match the given
+     * filter. Only the export URI can be streamed.
+     */
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) != BOOKS_EXPORT) {
+            return null;
+        }
+        ArrayList<String> types = new ArrayList<>();
+        for (String type : EXPORT_TYPES) {
+            if (ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+                types.add(type);
+            }
+        }
+        return types.isEmpty() ? null : types.toArray(new String[types.size()]);
+    }
+
+    /**
+     * Open a stream of the whole catalog for the export URI, in the first type that matches the
+     * given filter. The stream is the read end of a pipe, and the books are written into the
+     * other end by a writer thread as they are read (see {@link BookExporter}).
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+        String[] types = getStreamTypes(uri, mimeTypeFilter);
+        if (types == null) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+        return new AssetFileDescriptor(openPipeHelper(uri, types[0], opts, null, mExporter), 0,
+                AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Open a stream of the whole catalog as CSV for the export URI. Nothing else can be opened as
+     * a file, and the export can only be read.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != BOOKS_EXPORT || !"r".equals(mode)) {
+            throw new FileNotFoundException("Cannot open " + uri + " in mode " + mode);
+        }
+        return openPipeHelper(uri, BookEntry.EXPORT_CSV_TYPE, null, null, mExporter);
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        mSlowQueries.begin();
+        try {
+            Uri newUri = runInsert(match, uri, contentValues);
+            int rows = newUri != null ? 1 : 0;
+            mMetrics.record(match, ProviderMetrics.INSERT, start, rows);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.INSERT, uri, null, null, start,
+                    rows);
+            return newUri;
+        } catch (RuntimeException e) {
+            mMetrics.recordFailure(match, ProviderMetrics.INSERT, start);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.INSERT, uri, null, null, start, -1);
+            throw e;
+        }
+    }
+
+    /**
+     * Insert new data into the provider at the given URI, which matched the given code.
+     */
+    private Uri runInsert(int match, Uri uri, ContentValues contentValues) {
         switch (match) {
             case BOOKS:
-                return insertBook(uri, contentValues);
+                mRowCache.beginWrite();
+                try {
+                    return insertBook(uri, contentValues);
+                } finally {
+                    mRowCache.endWrite();
+                }
+            case IMPORTS:
+            case IMPORTS_ID_REJECTIONS:
+                return insertImportRow(uri, match, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
                 default:
                     throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
     }
 
+    /**
+     * Insert a new import, or a record rejected by the import at the given URI. Imports don't
+     * change any books, so they don't touch the row cache. Return the content URI of the new row.
+     */
+    private Uri insertImportRow(Uri uri, int match, ContentValues values) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id;
+        if (match == IMPORTS) {
+            id = database.insert(ImportEntry.TABLE_NAME, null, values);
+        } else {
+            // The ID of the import is the second segment of the URI, before "rejections".
+            values = new ContentValues(values);
+            values.put(RejectionEntry.COLUMN_IMPORT_ID, uri.getPathSegments().get(1));
+            id = database.insert(RejectionEntry.TABLE_NAME, null, values);
+        }
+        if (id == -1) {
+            Log.e(LOG_TAG, "insertImportRow: Failed to insert row for " + uri);
+            return null;
+        }
+        notifyChange(uri);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a new supplier. A supplier doesn't change any books until it is given one, so this
+     * doesn't touch the row cache. Return the content URI of the new supplier.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        long id = mDbHelper.getWritableDatabase().insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "insertSupplier: Failed to insert row for " + uri);
+            return null;
+        }
+        notifyChange(uri);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
     /**
      * Insert a book into the database with the given content values. Return the new content URI
      * for that specific row in the database.
      */
     private Uri insertBook(Uri uri, ContentValues values) {
 
-        // Get writeable database.
+        // Find or add the supplier and insert the new book with the given values, through the
+        // cached insert statement when the values fit it, all in one transaction.
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-        // Insert the new book with the given values.
-        long id = database.insert(BookEntry.TABLE_NAME, null, values);
+        long id;
+        database.beginTransactionNonExclusive();
+        try {
+            values = toBookValues(values);
+            if (BookStatements.canInsertBook(values)) {
+                id = mDbHelper.getStatements().insertBook(values);
+            } else {
+                id = database.insert(BookEntry.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
         // If the ID is -1, then the insertion failed. Log an error and return null.
         if (id == -1) {
             Log.e(LOG_TAG, "insertBook: Failed to insert row for " + uri);
@@ -145,29 +1019,436 @@ public class BookProvider extends ContentProvider {
         }
 
         // Notify all listeners that the data has changed for the pet content URI.
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         // Return the new URI with the ID (of the newly inserted row) appended at the end.
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Insert a whole set of books into the provider. All rows go into the database in a single
+     * transaction and listeners are only notified once, after the last row has been inserted.
+     * Return the number of rows that were inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        mSlowQueries.begin();
+        try {
+            int rowsInserted = runBulkInsert(match, uri, values);
+            mMetrics.record(match, ProviderMetrics.BULK_INSERT, start, rowsInserted);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.BULK_INSERT, uri, null, null, start,
+                    rowsInserted);
+            return rowsInserted;
+        } catch (RuntimeException e) {
+            mMetrics.recordFailure(match, ProviderMetrics.BULK_INSERT, start);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.BULK_INSERT, uri, null, null, start,
+                    -1);
+            throw e;
+        }
+    }
+
+    /**
+     * Insert a whole set of rows at the given URI, which matched the given code.
+     */
+    private int runBulkInsert(int match, Uri uri, ContentValues[] values) {
+        switch (match) {
+            case BOOKS:
+                mRowCache.beginWrite();
+                try {
+                    return bulkInsertBooks(uri, values);
+                } finally {
+                    mRowCache.endWrite();
+                }
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert the given books into the database inside one transaction, re-using the cached
+     * insert statement for every row. Rows that fail to insert are logged and skipped, in the
+     * same way as {@link #insertBook(Uri, ContentValues)}. Return the number of rows inserted.
+     */
+    private int bulkInsertBooks(Uri uri, ContentValues[] values) {
+
+        // Get writeable database and the cached statements.
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        BookStatements statements = mDbHelper.getStatements();
+
+        // Track the number of rows that were inserted.
+        int rowsInserted = 0;
+
+        // Hold back the change notification until the rows have been committed.
+        boolean batch = mNotifier.beginBatch();
+        boolean committed = false;
+
+        database.beginTransactionNonExclusive();
+        try {
+            for (ContentValues bookValues : values) {
+                bookValues = toBookValues(bookValues);
+                long id;
+                if (BookStatements.canInsertBook(bookValues)) {
+                    // Re-bind the cached statement with the values for this book.
+                    id = statements.insertBook(bookValues);
+                } else {
+                    // The values don't fit the compiled statement, so fall back to a plain insert.
+                    id = database.insert(BookEntry.TABLE_NAME, null, bookValues);
+                }
+
+                // If the ID is -1, then the insertion failed. Log an error and carry on.
+                if (id == -1) {
+                    Log.e(LOG_TAG, "bulkInsertBooks: Failed to insert row for " + uri);
+                } else {
+                    rowsInserted++;
+                }
+            }
+
+            // If 1 or more rows were inserted, then notify all listeners once for the whole set.
+            if (rowsInserted != 0) {
+                notifyChange(uri);
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            if (batch) {
+                mNotifier.endBatch(committed);
+            }
+        }
+
+        // Return the number of rows inserted.
+        return rowsInserted;
+    }
+
+    /**
+     * Returns the given book values with the supplier name and phone number swapped for the ID of
+     * the supplier with that name, adding the supplier if there isn't one yet. A phone number
+     * that differs from the supplier's is saved to the supplier, which changes it for every one
+     * of its books. The values are returned as they are if they don't name a supplier, and
+     * without a supplier ID if a new supplier has no phone number.
+     */
+    private ContentValues toBookValues(ContentValues values) {
+        String name = values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        if (name == null) {
+            return values;
+        }
+        String phone = values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+        ContentValues bookValues = new ContentValues(values);
+        bookValues.remove(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        bookValues.remove(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+
+        BookStatements statements = mDbHelper.getStatements();
+        long supplierId = statements.querySupplierId(name);
+        if (supplierId == -1) {
+            supplierId = statements.insertSupplier(name, phone);
+        } else if (phone != null && statements.setSupplierPhone(supplierId, phone) != 0) {
+            onSupplierChanged();
+        }
+        if (supplierId != -1) {
+            bookValues.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_ID, supplierId);
+        }
+        return bookValues;
+    }
+
+    /**
+     * Set the phone number of the suppliers of the books matching the given selection on the
+     * books view. Return the number of suppliers whose phone number changed.
+     */
+    private static int setSupplierPhones(SQLiteDatabase database, String selection,
+                                         String[] selectionArgs, String phone) {
+        String suppliers = "SELECT " + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + " FROM "
+                + BookDbHelper.VIEW_BOOKS;
+        ArrayList<String> whereArgs = new ArrayList<>();
+        if (!TextUtils.isEmpty(selection)) {
+            suppliers += " WHERE " + selection;
+            if (selectionArgs != null) {
+                Collections.addAll(whereArgs, selectionArgs);
+            }
+        }
+        whereArgs.add(phone);
+
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+        return database.update(SupplierEntry.TABLE_NAME, values,
+                SupplierEntry._ID + " IN (" + suppliers + ") AND "
+                        + SupplierEntry.COLUMN_SUPPLIER_PHONE + " != ?",
+                whereArgs.toArray(new String[whereArgs.size()]));
+    }
+
+    /**
+     * Drop every cached book and tell all listeners that the books have changed, after a change
+     * to a supplier, which shows up in every one of its books. The callers bracket this as a
+     * write.
+     */
+    private void onSupplierChanged() {
+        mRowCache.removeAll();
+        notifyChange(BookEntry.CONTENT_URI);
+    }
+
+    /**
+     * Apply a list of insert, update and delete operations as a single unit. All operations run
+     * inside one transaction, so if any of them fails the whole batch is rolled back. Listeners
+     * are notified once per changed URI, and only after the batch has been committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        // Get writeable database.
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Hold back the change notifications instead of notifying listeners straight away.
+        boolean batch = mNotifier.beginBatch();
+        boolean committed = false;
+
+        ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        mRowCache.beginWrite();
+        database.beginTransactionNonExclusive();
+        try {
+            for (int i = 0; i < operations.size(); i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            // Rows read while the batch was running may be out of date, so don't cache them.
+            mRowCache.endWrite();
+            // If the batch has been committed, now notify all listeners of the changed URIs.
+            if (batch) {
+                mNotifier.endBatch(committed);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed. The notification is sent
+     * at the end of a short window, together with any other changes made in the meantime, or when
+     * the batch running on the current thread commits.
+     */
+    private void notifyChange(Uri uri) {
+        mNotifier.notifyChange(uri);
+    }
+
     /**
      * Update the data at the given selection and selection arguments, with the new ContentValues.
      */
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case BOOKS:
-                return updateBook(uri, contentValues, selection, selectionArgs);
-            case BOOKS_ID:
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-                return updateBook(uri, contentValues, selection, selectionArgs);
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        mSlowQueries.begin();
+        try {
+            int rowsUpdated = runUpdate(match, uri, contentValues, selection, selectionArgs);
+            mMetrics.record(match, ProviderMetrics.UPDATE, start, rowsUpdated);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.UPDATE, uri, selection, null, start,
+                    rowsUpdated);
+            return rowsUpdated;
+        } catch (RuntimeException e) {
+            mMetrics.recordFailure(match, ProviderMetrics.UPDATE, start);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.UPDATE, uri, selection, null, start,
+                    -1);
+            throw e;
+        }
+    }
+
+    /**
+     * Update the data at the given URI, which matched the given code.
+     */
+    private int runUpdate(int match, Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
+        mRowCache.beginWrite();
+        try {
+            switch (match) {
+                case BOOKS:
+                    // Any of the books could match the selection, so drop them all from the cache.
+                    mRowCache.removeAll();
+                    return updateBook(uri, contentValues, selection, selectionArgs);
+                case BOOKS_ID:
+                    mRowCache.remove(ContentUris.parseId(uri));
+                    if (isQuantityOnly(contentValues)) {
+                        return updateQuantity(uri, contentValues);
+                    }
+                    selection = BookEntry._ID + "=?";
+                    selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                    return updateBook(uri, contentValues, selection, selectionArgs);
+                case BOOKS_ID_ADJUST:
+                    // The ID is the second to last segment of the URI, before "adjust".
+                    long id = Long.parseLong(uri.getPathSegments().get(1));
+                    return adjustQuantity(id, contentValues);
+                case IMPORTS_ID:
+                    // Imports don't change any books, so the cache is left as it is.
+                    int rowsUpdated = mDbHelper.getWritableDatabase().update(
+                            ImportEntry.TABLE_NAME, contentValues, ImportEntry._ID + "=?",
+                            new String[] {String.valueOf(ContentUris.parseId(uri))});
+                    if (rowsUpdated != 0) {
+                        notifyChange(uri);
+                    }
+                    return rowsUpdated;
+                case SUPPLIERS_ID:
+                    // The supplier shows up in each of its books, so they all change with it.
+                    int suppliersUpdated = mDbHelper.getWritableDatabase().update(
+                            SupplierEntry.TABLE_NAME, contentValues, SupplierEntry._ID + "=?",
+                            new String[] {String.valueOf(ContentUris.parseId(uri))});
+                    if (suppliersUpdated != 0) {
+                        onSupplierChanged();
+                        notifyChange(uri);
+                    }
+                    return suppliersUpdated;
                 default:
                     throw new IllegalArgumentException("Update is not supported for " + uri);
+            }
+        } finally {
+            mRowCache.endWrite();
+        }
+    }
+
+    /**
+     * Returns whether the given values only set the stock quantity.
+     */
+    private static boolean isQuantityOnly(ContentValues values) {
+        return values.size() == 1
+                && values.getAsLong(BookEntry.COLUMN_PRODUCT_QUANTITY) != null;
+    }
+
+    /**
+     * Set the stock quantity of the single book at the given URI, by appending a stock movement
+     * through the cached statement. Return the number of books whose stock changed.
+     */
+    private int updateQuantity(Uri uri, ContentValues values) {
+        long id = ContentUris.parseId(uri);
+        long quantity = values.getAsLong(BookEntry.COLUMN_PRODUCT_QUANTITY);
+        int rowsUpdated = mDbHelper.getStatements().setQuantity(id, quantity,
+                StockMovementEntry.REASON_ADJUSTMENT);
+        mCompactor.onMovementsAppended(rowsUpdated);
+
+        // If the row was updated, then notify all listeners that the data for this book changed.
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
         }
+        return rowsUpdated;
+    }
+
+    /**
+     * Adjust the stock quantity of the book with the given ID by the signed
+     * {@link BookEntry#ADJUST_DELTA} in the given values, for the {@link BookEntry#ADJUST_REASON}.
+     * This appends a stock movement in a single statement with no prior read, so concurrent
+     * adjustments never overwrite each other. Return 1 if the quantity was adjusted, or 0 if the
+     * book doesn't exist or would go below zero stock.
+     */
+    private int adjustQuantity(long id, ContentValues values) {
+        Integer delta = values.getAsInteger(BookEntry.ADJUST_DELTA);
+        if (delta == null) {
+            throw new IllegalArgumentException("Stock adjustment requires a delta");
+        }
+        Integer reason = values.getAsInteger(BookEntry.ADJUST_REASON);
+        if (reason == null) {
+            reason = delta < 0 ? StockMovementEntry.REASON_SALE
+                    : StockMovementEntry.REASON_RESTOCK;
+        } else if (!StockMovementEntry.isValidReason(reason)) {
+            throw new IllegalArgumentException("Stock adjustment requires a valid reason");
+        }
+
+        // Append the movement and get the number of rows affected. The callers bracket this as a
+        // write, so the book can be dropped from the cache here.
+        mRowCache.remove(id);
+        int rowsUpdated = mDbHelper.getStatements().adjustQuantity(id, delta, reason);
+        mCompactor.onMovementsAppended(rowsUpdated);
+
+        // If the row was updated, then notify all listeners that the data for this book changed.
+        if (rowsUpdated != 0) {
+            notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id));
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Handle provider methods called through {@link android.content.ContentResolver#call}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (BookContract.METHOD_ADJUST_QUANTITY.equals(method)) {
+            long id = Long.parseLong(arg);
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.ADJUST_DELTA, extras.getInt(BookEntry.ADJUST_DELTA));
+            if (extras.containsKey(BookEntry.ADJUST_REASON)) {
+                values.put(BookEntry.ADJUST_REASON, extras.getInt(BookEntry.ADJUST_REASON));
+            }
+
+            // Adjust and read back the new stock level in one transaction, so the level returned
+            // is the one this adjustment produced.
+            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            long quantity = -1;
+            mRowCache.beginWrite();
+            database.beginTransactionNonExclusive();
+            try {
+                if (adjustQuantity(id, values) != 0) {
+                    quantity = mDbHelper.getStatements().queryQuantity(id);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+                mRowCache.endWrite();
+            }
+
+            Bundle result = new Bundle();
+            result.putLong(BookEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+            return result;
+        } else if (BookContract.METHOD_NOTIFICATION_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(BookContract.KEY_NOTIFICATIONS_REQUESTED,
+                    mNotifier.getRequestedCount());
+            result.putLong(BookContract.KEY_NOTIFICATIONS_SENT, mNotifier.getSentCount());
+            return result;
+        } else if (BookContract.METHOD_SET_NOTIFICATION_WINDOW.equals(method)) {
+            mNotifier.setWindowMillis(Long.parseLong(arg));
+            return null;
+        } else if (BookContract.METHOD_ROW_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(BookContract.KEY_ROW_CACHE_HITS, mRowCache.getHitCount());
+            result.putInt(BookContract.KEY_ROW_CACHE_MISSES, mRowCache.getMissCount());
+            result.putInt(BookContract.KEY_ROW_CACHE_EVICTIONS, mRowCache.getEvictionCount());
+            return result;
+        } else if (BookContract.METHOD_COMPACT_STOCK.equals(method)) {
+            // Compaction doesn't change the stock of any book, so nobody needs to be notified.
+            Bundle result = new Bundle();
+            result.putInt(BookContract.KEY_BOOKS_COMPACTED, mCompactor.compact());
+            return result;
+        } else if (BookContract.METHOD_BACKUP.equals(method)) {
+            try {
+                return mBackup.backup(new File(arg));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot back up to " + arg, e);
+            }
+        } else if (BookContract.METHOD_RESTORE.equals(method)) {
+            // Every book may have changed, so drop the cached ones and tell everyone watching.
+            Bundle result;
+            mRowCache.beginWrite();
+            try {
+                result = mBackup.restore(new File(arg));
+                mRowCache.removeAll();
+                mCompactor.reset();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot restore from " + arg, e);
+            } finally {
+                mRowCache.endWrite();
+            }
+            notifyChange(BookContract.BASE_CONTENT_URI);
+            return result;
+        } else if (BookContract.METHOD_METRICS.equals(method)) {
+            return mMetrics.snapshot(BookContract.METRICS_RESET.equals(arg));
+        } else if (BookContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            mSlowQueries.setThresholdMillis(Long.parseLong(arg));
+            return null;
+        } else if (BookContract.METHOD_SLOW_QUERIES.equals(method)) {
+            return mSlowQueries.dump(BookContract.SLOW_QUERIES_CLEAR.equals(arg));
+        }
+        return super.call(method, arg, extras);
     }
 
     /**
@@ -184,47 +1465,191 @@ public class BookProvider extends ContentProvider {
         // Otherwise, get writeable database to update the data.
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the databse and get the number of rows affected.
-        int rowsUpdated = database.update(BookEntry.TABLE_NAME, values,selection, selectionArgs);
+        int rowsUpdated;
+        database.beginTransactionNonExclusive();
+        try {
+            rowsUpdated = updateBookValues(database, values, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed.
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         // Return the number of rows updated.
         return rowsUpdated;
     }
 
+    /**
+     * Update the books matching the given selection on the books view with the given values,
+     * inside the transaction started by {@link #updateBook}. Return the number of rows updated.
+     */
+    private int updateBookValues(SQLiteDatabase database, ContentValues values, String selection,
+                                 String[] selectionArgs) {
+        // The supplier is kept in a table of its own. A supplier name is swapped for the ID of
+        // that supplier, and a phone number on its own is saved to the suppliers of the books.
+        if (values.containsKey(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME)) {
+            if (values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME) == null) {
+                throw new IllegalArgumentException("Book requires a supplier name");
+            }
+            values = toBookValues(values);
+            if (!values.containsKey(BookEntry.COLUMN_PRODUCT_SUPPLIER_ID)) {
+                throw new IllegalArgumentException("New supplier requires a phone number");
+            }
+        } else if (values.containsKey(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE)) {
+            String phone = values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+            if (phone == null) {
+                throw new IllegalArgumentException("Book requires a supplier phone number");
+            }
+            values = new ContentValues(values);
+            values.remove(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+            if (setSupplierPhones(database, selection, selectionArgs, phone) != 0) {
+                onSupplierChanged();
+            }
+            if (values.size() == 0) {
+                return queryBookIds(database, selection, selectionArgs).length;
+            }
+        }
+
+        int rowsUpdated;
+        if (!values.containsKey(BookEntry.COLUMN_PRODUCT_QUANTITY)) {
+            // Perform the update on the databse and get the number of rows affected.
+            rowsUpdated = database.update(BookEntry.TABLE_NAME, values,
+                    toTableSelection(selection), selectionArgs);
+        } else {
+            // The quantity is never written in place. Each matching book gets a stock movement
+            // that brings it to the new quantity, and the other values are updated as usual.
+            Long quantity = values.getAsLong(BookEntry.COLUMN_PRODUCT_QUANTITY);
+            if (quantity == null) {
+                throw new IllegalArgumentException("Book requires a valid quantity");
+            }
+            ContentValues bookValues = new ContentValues(values);
+            bookValues.remove(BookEntry.COLUMN_PRODUCT_QUANTITY);
+
+            BookStatements statements = mDbHelper.getStatements();
+            int movementsAppended = 0;
+            database.beginTransactionNonExclusive();
+            try {
+                long[] ids = queryBookIds(database, selection, selectionArgs);
+                for (long id : ids) {
+                    movementsAppended += statements.setQuantity(id, quantity,
+                            StockMovementEntry.REASON_ADJUSTMENT);
+                    if (bookValues.size() != 0) {
+                        database.update(BookEntry.TABLE_NAME, bookValues, BookEntry._ID + "=?",
+                                new String[] {String.valueOf(id)});
+                    }
+                }
+                rowsUpdated = ids.length;
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            mCompactor.onMovementsAppended(movementsAppended);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Returns the IDs of the books matching the given selection on the books view.
+     */
+    private static long[] queryBookIds(SQLiteDatabase database, String selection,
+                                       String[] selectionArgs) {
+        Cursor cursor = database.query(BookDbHelper.VIEW_BOOKS, new String[] {BookEntry._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns a selection on the books table that matches the same books as the given selection
+     * does on the books view, where the quantity is the current stock rather than the snapshot.
+     * The write doesn't go through a cursor, so its search is handed to the slow-query log here.
+     */
+    private String toTableSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        String tableSelection = BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM "
+                + BookDbHelper.VIEW_BOOKS + " WHERE " + selection + ")";
+        mSlowQueries.addStatement("SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + tableSelection);
+        return tableSelection;
+    }
+
+    /**
+     * Delete the data at the given selection and selection arguments.
+     */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        int match = sUriMatcher.match(uri);
+        long start = System.nanoTime();
+        mSlowQueries.begin();
+        try {
+            int rowsDeleted = runDelete(match, uri, selection, selectionArgs);
+            mMetrics.record(match, ProviderMetrics.DELETE, start, rowsDeleted);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.DELETE, uri, selection, null, start,
+                    rowsDeleted);
+            return rowsDeleted;
+        } catch (RuntimeException e) {
+            mMetrics.recordFailure(match, ProviderMetrics.DELETE, start);
+            mSlowQueries.end(mDbHelper, match, ProviderMetrics.DELETE, uri, selection, null, start,
+                    -1);
+            throw e;
+        }
+    }
+
+    /**
+     * Delete the data at the given URI, which matched the given code.
+     */
+    private int runDelete(int match, Uri uri, String selection, String[] selectionArgs) {
         // Get writeable database.
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         // Track the number of rows that were deleted.
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case BOOKS:
-                // Delete all rows that match the selection and selection args.
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case BOOKS_ID:
-                // Delete a single row given by the ID in the URI.
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+        mRowCache.beginWrite();
+        try {
+            switch (match) {
+                case BOOKS:
+                    // Delete all rows that match the selection and selection args. Any of the
+                    // books could match, so drop them all from the cache.
+                    mRowCache.removeAll();
+                    rowsDeleted = database.delete(BookEntry.TABLE_NAME,
+                            toTableSelection(selection), selectionArgs);
+                    break;
+                case BOOKS_ID:
+                    // Delete a single row given by the ID in the URI, through the cached statement.
+                    long id = ContentUris.parseId(uri);
+                    mRowCache.remove(id);
+                    rowsDeleted = mDbHelper.getStatements().deleteBook(id);
+                    break;
+                case IMPORTS_ID:
+                    // Delete a single import, along with the records it rejected.
+                    rowsDeleted = database.delete(ImportEntry.TABLE_NAME, ImportEntry._ID + "=?",
+                            new String[] {String.valueOf(ContentUris.parseId(uri))});
+                    break;
+                default:
+                    throw new IllegalArgumentException("Deletion is not supported for " + uri);
+            }
+        } finally {
+            mRowCache.endWrite();
         }
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed.
         if (rowsDeleted != 0) {
             // Notify all listeners that the data has changed for the book content URI.
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows deleted.
@@ -0,0 +1,237 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+/**
+ * Least recently used cache of whole book rows, keyed by the ID of the book, so that opening the
+ * detail or editor screen of a book that was just shown doesn't read it from the database again.
+ * The cache is bounded by an estimate of the memory the rows take up, not by their number.
+ *
+ * The provider has to tell the cache about every write it makes. A write removes the rows it
+ * changes, and while any write is running, and for reads that started before it finished, rows
+ * read from the database are not cached. That way a row read just before a change commits can
+ * never be put back into the cache after the change has removed it.
+ */
+class BookRowCache {
+
+    /** Columns of a cached row, in the order they are stored. */
+    static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_GENRE,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE,
+            BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+    };
+
+    /** Share of the app's maximum heap the cache may use. */
+    private static final int HEAP_FRACTION = 64;
+
+    /** Estimated size of a row and its array, not counting the values, in bytes. */
+    private static final int ROW_OVERHEAD_BYTES = 16 + 4 * COLUMNS.length;
+
+    /** Estimated size of a boxed number, in bytes. */
+    private static final int NUMBER_BYTES = 16;
+
+    /** Estimated size of a string with no characters, in bytes. */
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    /** The cached rows, by book ID. */
+    private final LruCache<Long, Object[]> mRows;
+
+    /** Number of writes running now. Guarded by this. */
+    private int mWriters;
+
+    /** Changes whenever a write starts or finishes. Guarded by this. */
+    private long mGeneration;
+
+    /**
+     * Constructs a new {@link BookRowCache}, sized to a share of the app's maximum heap.
+     */
+    BookRowCache() {
+        this((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / HEAP_FRACTION));
+    }
+
+    /**
+     * Constructs a new {@link BookRowCache}.
+     *
+     * @param maxBytes Estimated number of bytes the cached rows may take up.
+     */
+    BookRowCache(int maxBytes) {
+        mRows = new LruCache<Long, Object[]>(maxBytes) {
+            @Override
+            protected int sizeOf(Long id, Object[] row) {
+                return estimateSize(row);
+            }
+        };
+    }
+
+    /**
+     * Returns whether a cached row holds every one of the given columns, or null for all of them.
+     */
+    static boolean canServe(String[] projection) {
+        return projection == null || getColumnIndices(projection) != null;
+    }
+
+    /**
+     * Returns a cursor over the given columns of the cached book with the given ID, or null if
+     * the book isn't cached. The columns must be ones the cache {@link #canServe(String[])}.
+     *
+     * @param id         ID of the book.
+     * @param projection Columns to return, or null for all of them.
+     */
+    Cursor query(long id, String[] projection) {
+        Object[] row = mRows.get(id);
+        if (row == null) {
+            return null;
+        }
+        return createCursor(row, projection);
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put(Object[], long)} for a row about to be read
+     * from the database.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache the given row, read with {@link #readRow(Cursor)}, unless a write has started or
+     * finished since the given generation.
+     */
+    synchronized void put(Object[] row, long generation) {
+        if (mWriters != 0 || generation != mGeneration) {
+            return;
+        }
+        mRows.put((Long) row[0], row);
+    }
+
+    /**
+     * Returns the current row of the given cursor, which holds every column in
+     * {@link #COLUMNS}, in the form it is cached in.
+     */
+    static Object[] readRow(Cursor cursor) {
+        Object[] row = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            int columnIndex = cursor.getColumnIndexOrThrow(COLUMNS[i]);
+            switch (cursor.getType(columnIndex)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(columnIndex);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(columnIndex);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(columnIndex);
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Returns a cursor holding the given columns of the given row, or no rows if the row is null.
+     * The columns must be ones the cache {@link #canServe(String[])}.
+     */
+    static Cursor createCursor(Object[] row, String[] projection) {
+        MatrixCursor cursor = new MatrixCursor(projection != null ? projection : COLUMNS, 1);
+        if (row != null) {
+            int[] columnIndices = getColumnIndices(projection != null ? projection : COLUMNS);
+            Object[] values = new Object[columnIndices.length];
+            for (int i = 0; i < columnIndices.length; i++) {
+                values[i] = row[columnIndices[i]];
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    /**
+     * Mark the start of a write. Rows are not cached until every write has finished.
+     */
+    synchronized void beginWrite() {
+        mWriters++;
+        mGeneration++;
+    }
+
+    /**
+     * Mark the end of a write started with {@link #beginWrite()}, once its changes have been
+     * committed or rolled back.
+     */
+    synchronized void endWrite() {
+        mWriters--;
+        mGeneration++;
+    }
+
+    /** Remove the book with the given ID from the cache. */
+    void remove(long id) {
+        mRows.remove(id);
+    }
+
+    /** Remove every book from the cache. */
+    void removeAll() {
+        mRows.evictAll();
+    }
+
+    /** Returns the number of lookups served from the cache. */
+    int getHitCount() {
+        return mRows.hitCount();
+    }
+
+    /** Returns the number of lookups that weren't in the cache. */
+    int getMissCount() {
+        return mRows.missCount();
+    }
+
+    /** Returns the number of rows evicted, to make room for others or when memory is low. */
+    int getEvictionCount() {
+        return mRows.evictionCount();
+    }
+
+    /**
+     * Returns the position in a cached row of each of the given columns, or null if one of them
+     * isn't part of a cached row.
+     */
+    private static int[] getColumnIndices(String[] projection) {
+        int[] columnIndices = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnIndices[i] = -1;
+            for (int j = 0; j < COLUMNS.length; j++) {
+                if (COLUMNS[j].equals(projection[i])) {
+                    columnIndices[i] = j;
+                    break;
+                }
+            }
+            if (columnIndices[i] == -1) {
+                return null;
+            }
+        }
+        return columnIndices;
+    }
+
+    /**
+     * Returns an estimate of the memory the given row takes up, in bytes.
+     */
+    private static int estimateSize(Object[] row) {
+        int size = ROW_OVERHEAD_BYTES;
+        for (Object value : row) {
+            if (value instanceof String) {
+                size += STRING_OVERHEAD_BYTES + 2 * ((String) value).length();
+            } else if (value != null) {
+                size += NUMBER_BYTES;
+            }
+        }
+        return size;
+    }
+}
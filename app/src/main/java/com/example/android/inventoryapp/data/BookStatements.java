@@ -0,0 +1,356 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.BookContract.SupplierEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled statements for the hot paths of {@link BookProvider}: inserting a book,
+ * appending a stock movement for a book, deleting a book, reading the stock of a book and finding
+ * the supplier of a book. Each
+ * statement is compiled once and then re-bound for every call, instead of building and parsing
+ * the SQL (and the {@link ContentValues}) again each time.
+ *
+ * The statements belong to the database the {@link BookDbHelper} had open when they were
+ * compiled, so the helper clears the cache whenever the schema is upgraded or the database is
+ * closed. Every statement is bound and run inside a transaction, so only the thread holding the
+ * database's single write connection can be using a statement at any one time. Joining that
+ * transaction first, rather than locking the statement, means a thread never waits for the
+ * connection while holding something another writer needs.
+ */
+class BookStatements {
+
+    /** SQL statement used to insert a single book. */
+    private static final String SQL_INSERT_BOOK = "INSERT INTO " + BookEntry.TABLE_NAME + " ("
+            + BookEntry.COLUMN_PRODUCT_NAME + ", "
+            + BookEntry.COLUMN_PRODUCT_GENRE + ", "
+            + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + BookEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+            + BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    /** Start of the SQL statements that append a stock movement. */
+    private static final String SQL_INSERT_MOVEMENT = "INSERT INTO "
+            + StockMovementEntry.TABLE_NAME + " ("
+            + StockMovementEntry.COLUMN_BOOK_ID + ", "
+            + StockMovementEntry.COLUMN_DELTA + ", "
+            + StockMovementEntry.COLUMN_REASON + ", "
+            + StockMovementEntry.COLUMN_TIMESTAMP + ")";
+
+    /**
+     * SQL statement used to append a movement changing the stock of a single book by a signed
+     * delta (?1), for a reason (?2) at a time (?3). The movement is only appended if the book
+     * (?4) exists and its stock wouldn't drop below zero.
+     */
+    private static final String SQL_ADJUST_QUANTITY = SQL_INSERT_MOVEMENT
+            + " SELECT " + BookEntry._ID + ", ?1, ?2, ?3 FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry._ID + " = ?4"
+            + " AND " + BookDbHelper.CURRENT_QUANTITY + " + ?1 >= 0";
+
+    /**
+     * SQL statement used to append a movement bringing the stock of a single book (?4) to a
+     * quantity (?1), for a reason (?2) at a time (?3). Nothing is appended if the book already has
+     * that quantity.
+     */
+    private static final String SQL_SET_QUANTITY = SQL_INSERT_MOVEMENT
+            + " SELECT " + BookEntry._ID + ", ?1 - (" + BookDbHelper.CURRENT_QUANTITY + "), ?2, ?3"
+            + " FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry._ID + " = ?4"
+            + " AND ?1 != " + BookDbHelper.CURRENT_QUANTITY;
+
+    /** SQL statement used to delete a single book. */
+    private static final String SQL_DELETE_BOOK = "DELETE FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry._ID + " = ?";
+
+    /** SQL statement used to read the stock quantity of a single book. */
+    private static final String SQL_QUERY_QUANTITY = "SELECT "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + BookDbHelper.VIEW_BOOKS
+            + " WHERE " + BookEntry._ID + " = ?";
+
+    /** SQL statement used to find the ID of the supplier with a given name. */
+    private static final String SQL_QUERY_SUPPLIER = "SELECT " + SupplierEntry._ID + " FROM "
+            + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?";
+
+    /** SQL statement used to insert a single supplier. */
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME
+            + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+            + SupplierEntry.COLUMN_SUPPLIER_PHONE + ") VALUES (?, ?)";
+
+    /**
+     * SQL statement used to set the phone number (?2) of a single supplier (?1). Nothing is
+     * written if the supplier already has that phone number.
+     */
+    private static final String SQL_SET_SUPPLIER_PHONE = "UPDATE " + SupplierEntry.TABLE_NAME
+            + " SET " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ?2"
+            + " WHERE " + SupplierEntry._ID + " = ?1"
+            + " AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " != ?2";
+
+    /** Database helper the statements are compiled against. */
+    private final BookDbHelper mDbHelper;
+
+    /** The statements compiled so far, by their SQL. Guarded by this. */
+    private final Map<String, SQLiteStatement> mStatements = new HashMap<>();
+
+    /**
+     * Constructs a new {@link BookStatements}.
+     *
+     * @param dbHelper Database helper the statements are compiled against.
+     */
+    BookStatements(BookDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Returns whether the given values can be inserted with {@link #insertBook(ContentValues)},
+     * which is when they only contain the columns it binds. The supplier has to be given by its
+     * ID, as in the books table.
+     */
+    static boolean canInsertBook(ContentValues values) {
+        for (String key : values.keySet()) {
+            if (!BookEntry.COLUMN_PRODUCT_NAME.equals(key)
+                    && !BookEntry.COLUMN_PRODUCT_GENRE.equals(key)
+                    && !BookEntry.COLUMN_PRODUCT_PRICE.equals(key)
+                    && !BookEntry.COLUMN_PRODUCT_QUANTITY.equals(key)
+                    && !BookEntry.COLUMN_PRODUCT_SUPPLIER_ID.equals(key)
+                    && !BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD.equals(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert a book with the given values. A missing quantity or reorder threshold is inserted as
+     * 0 to match the column default; any other missing value makes the insert fail. Return the ID of the new
+     * book, or -1 if the insert failed.
+     */
+    long insertBook(ContentValues values) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_INSERT_BOOK);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.clearBindings();
+            bindString(statement, 1, values.getAsString(BookEntry.COLUMN_PRODUCT_NAME));
+            bindLong(statement, 2, values.getAsLong(BookEntry.COLUMN_PRODUCT_GENRE));
+            // Bind the price as it was given, so a price that isn't a whole number of minor
+            // units fails the check on the column rather than being cut short.
+            DatabaseUtils.bindObjectToProgram(statement, 3,
+                    values.get(BookEntry.COLUMN_PRODUCT_PRICE));
+            Long quantity = values.getAsLong(BookEntry.COLUMN_PRODUCT_QUANTITY);
+            statement.bindLong(4, quantity != null ? quantity : 0);
+            bindLong(statement, 5, values.getAsLong(BookEntry.COLUMN_PRODUCT_SUPPLIER_ID));
+            Long threshold = values.getAsLong(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+            statement.bindLong(6, threshold != null ? threshold : 0);
+            long id;
+            try {
+                id = statement.executeInsert();
+            } catch (SQLException e) {
+                id = -1;
+            }
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Append a stock movement changing the stock of the book with the given ID by the given delta,
+     * unless the stock would drop below zero. Return 1 if the movement was appended, or 0 if not.
+     */
+    int adjustQuantity(long id, long delta, int reason) {
+        return appendMovement(SQL_ADJUST_QUANTITY, id, delta, reason);
+    }
+
+    /**
+     * Append a stock movement bringing the stock of the book with the given ID to the given
+     * quantity. Return 1 if the movement was appended, or 0 if the book doesn't exist or already
+     * has that quantity.
+     */
+    int setQuantity(long id, long quantity, int reason) {
+        return appendMovement(SQL_SET_QUANTITY, id, quantity, reason);
+    }
+
+    /**
+     * Append a stock movement with one of the movement statements above, binding the given delta
+     * or quantity as ?1. Return 1 if the movement was appended, or 0 if not.
+     */
+    private int appendMovement(String sql, long id, long amount, int reason) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(sql);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.bindLong(1, amount);
+            statement.bindLong(2, reason);
+            statement.bindLong(3, System.currentTimeMillis());
+            statement.bindLong(4, id);
+            int rowsInserted = statement.executeInsert() != -1 ? 1 : 0;
+            database.setTransactionSuccessful();
+            return rowsInserted;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Delete the book with the given ID. Return the number of rows deleted.
+     */
+    int deleteBook(long id) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_DELETE_BOOK);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.bindLong(1, id);
+            int rowsDeleted = statement.executeUpdateDelete();
+            database.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the stock quantity of the book with the given ID, or -1 if there is no such book.
+     */
+    long queryQuantity(long id) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_QUERY_QUANTITY);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.bindLong(1, id);
+            long quantity;
+            try {
+                quantity = statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                quantity = -1;
+            }
+            database.setTransactionSuccessful();
+            return quantity;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the ID of the supplier with the given name, or -1 if there is no such supplier.
+     */
+    long querySupplierId(String name) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_QUERY_SUPPLIER);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.bindString(1, name);
+            long id;
+            try {
+                id = statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                id = -1;
+            }
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Insert a supplier with the given name and phone number. Return the ID of the new supplier,
+     * or -1 if the insert failed, such as when there is no phone number.
+     */
+    long insertSupplier(String name, String phone) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_INSERT_SUPPLIER);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.clearBindings();
+            bindString(statement, 1, name);
+            bindString(statement, 2, phone);
+            long id;
+            try {
+                id = statement.executeInsert();
+            } catch (SQLException e) {
+                id = -1;
+            }
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Set the phone number of the supplier with the given ID. Return 1 if the phone number
+     * changed, or 0 if the supplier doesn't exist or already has that phone number.
+     */
+    int setSupplierPhone(long id, String phone) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = getStatement(SQL_SET_SUPPLIER_PHONE);
+        database.beginTransactionNonExclusive();
+        try {
+            statement.bindLong(1, id);
+            statement.bindString(2, phone);
+            int rowsUpdated = statement.executeUpdateDelete();
+            database.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Close every compiled statement and empty the cache. Statements are compiled again the next
+     * time they are used.
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+
+    /**
+     * Returns the compiled statement for the given SQL, compiling it if it isn't cached yet.
+     * Compiling needs a database connection, so it is done without holding the cache lock.
+     */
+    private SQLiteStatement getStatement(String sql) {
+        synchronized (this) {
+            SQLiteStatement statement = mStatements.get(sql);
+            if (statement != null) {
+                return statement;
+            }
+        }
+        SQLiteStatement compiled = mDbHelper.getWritableDatabase().compileStatement(sql);
+        synchronized (this) {
+            // Another thread may have compiled the same statement in the meantime.
+            SQLiteStatement statement = mStatements.get(sql);
+            if (statement != null) {
+                compiled.close();
+                return statement;
+            }
+            mStatements.put(sql, compiled);
+            return compiled;
+        }
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindLong(SQLiteStatement statement, int index, Long value) {
+        if (value != null) {
+            statement.bindLong(index, value);
+        }
+    }
+}
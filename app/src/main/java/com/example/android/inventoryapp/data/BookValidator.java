@@ -0,0 +1,112 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.R;
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.math.BigDecimal;
+
+/**
+ * The rules a book has to follow before it is saved, shared by the editor and the CSV import so
+ * that a book is accepted or rejected in the same way whichever way it comes in. The values are
+ * checked as the text the user typed or the file held, before anything is parsed.
+ */
+public final class BookValidator {
+
+    // This class only has static methods, so give it an empty private constructor.
+    private BookValidator() {
+    }
+
+    /**
+     * Check the given values of a book. Return the string resource ID of the message for the
+     * first rule they break, or 0 if they can be saved.
+     *
+     * @param name             Name of the book.
+     * @param genre            Genre of the book, one of the genres in {@link BookEntry}.
+     * @param price            Price of the book, as an amount of the currency such as "5.99".
+     * @param quantity         Stock quantity of the book.
+     * @param reorderThreshold Reorder threshold of the book, or empty to use 0.
+     * @param supplierName     Name of the supplier.
+     * @param supplierPhone    Phone number of the supplier.
+     */
+    public static int validate(String name, int genre, String price, String quantity,
+                               String reorderThreshold, String supplierName,
+                               String supplierPhone) {
+        if (TextUtils.isEmpty(name)) {
+            return R.string.provider_requires_name;
+        }
+        if (!BookEntry.isValidGenre(genre)) {
+            return R.string.provider_requires_genre;
+        }
+        if (parsePrice(price) < 0) {
+            return R.string.provider_requires_price;
+        }
+        if (parseCount(quantity) < 0) {
+            return R.string.provider_requires_quantity;
+        }
+        if (!TextUtils.isEmpty(reorderThreshold) && parseCount(reorderThreshold) < 0) {
+            return R.string.provider_requires_reorder_threshold;
+        }
+        if (TextUtils.isEmpty(supplierName)) {
+            return R.string.provider_requires_supplier_name;
+        }
+        if (TextUtils.isEmpty(supplierPhone)) {
+            return R.string.provider_requires_supplier_phone;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the content values of a book, from values that
+     * {@link #validate(String, int, String, String, String, String, String)} accepted.
+     */
+    public static ContentValues toContentValues(String name, int genre, String price,
+                                                String quantity, String reorderThreshold,
+                                                String supplierName, String supplierPhone) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRODUCT_GENRE, genre);
+        BookEntry.putPrice(values, parsePrice(price));
+        values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, parseCount(quantity));
+        // The reorder threshold is optional. Without one, the book is only reordered once it has
+        // sold out.
+        values.put(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+                TextUtils.isEmpty(reorderThreshold) ? 0 : parseCount(reorderThreshold));
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierName);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, supplierPhone);
+        return values;
+    }
+
+    /**
+     * Returns the given amount of the currency as a price in minor units, or -1 if it isn't a
+     * price of zero or more. The amount is read as a decimal, so it is never off by a fraction
+     * of a cent the way a double can be.
+     */
+    private static long parsePrice(String price) {
+        if (TextUtils.isEmpty(price)) {
+            return -1;
+        }
+        try {
+            long value = BookEntry.toPrice(new BigDecimal(price));
+            return value >= 0 ? value : -1;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the given count of books, or -1 if it isn't a whole number of zero or more.
+     */
+    private static int parseCount(String count) {
+        if (TextUtils.isEmpty(count)) {
+            return -1;
+        }
+        try {
+            return Math.max(Integer.parseInt(count), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Reads the records of a CSV file one at a time, as described in RFC 4180, through a buffer of a
+ * fixed size. Only the record being read is held in memory, so the file can be any size.
+ *
+ * Fields are separated by commas and records by line breaks (CRLF, LF or CR). A field in double
+ * quotes may hold commas, line breaks and doubled double quotes. Blank lines are skipped, as is a
+ * byte order mark at the start of the file.
+ */
+class CsvReader implements Closeable {
+
+    /** Size of the buffer the file is read through, in characters. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** Value of {@link #mPushedBack} when no character has been pushed back. */
+    private static final int NONE = -2;
+
+    /** Byte order mark some editors put at the start of the file. */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /** The file being read. */
+    private final BufferedReader mReader;
+
+    /** The fields of the record being read. */
+    private final ArrayList<String> mFields = new ArrayList<>();
+
+    /** The field being read. */
+    private final StringBuilder mField = new StringBuilder();
+
+    /** Character read ahead and pushed back, or {@link #NONE}. */
+    private int mPushedBack = NONE;
+
+    /** Whether nothing has been read from the file yet. */
+    private boolean mAtStart = true;
+
+    /**
+     * Constructs a new {@link CsvReader}.
+     *
+     * @param reader The file to read.
+     */
+    CsvReader(Reader reader) {
+        mReader = new BufferedReader(reader, BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the file.
+     */
+    String[] readRecord() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            if (c == '\n' || c == '\r') {
+                // A blank line, which holds no record.
+                skipLineFeedAfter(c);
+                continue;
+            }
+            readFields(c);
+            return mFields.toArray(new String[mFields.size()]);
+        }
+    }
+
+    /**
+     * Read the fields of a record into {@link #mFields}, starting with the given character.
+     */
+    private void readFields(int c) throws IOException {
+        mFields.clear();
+        mField.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // The file ended inside quotes. Keep what was read rather than lose the field.
+                    endField();
+                    return;
+                } else if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        // A doubled quote stands for a quote in the field.
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                endField();
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                endField();
+                skipLineFeedAfter(c);
+                return;
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /** Add the field that has been read to the record, and start the next one. */
+    private void endField() {
+        mFields.add(mField.toString());
+        mField.setLength(0);
+    }
+
+    /**
+     * If the given line break is a CR, skip the LF of a CRLF after it.
+     */
+    private void skipLineFeedAfter(int c) throws IOException {
+        if (c == '\r') {
+            int next = read();
+            if (next != '\n') {
+                mPushedBack = next;
+            }
+        }
+    }
+
+    /** Returns the next character of the file, or -1 at the end of the file. */
+    private int read() throws IOException {
+        if (mPushedBack != NONE) {
+            int c = mPushedBack;
+            mPushedBack = NONE;
+            return c;
+        }
+        int c = mReader.read();
+        if (mAtStart) {
+            mAtStart = false;
+            if (c == BYTE_ORDER_MARK) {
+                c = mReader.read();
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the change notifications sent by {@link BookProvider}. Changed URIs are gathered over
+ * a short window and then each distinct URI is notified once, so a burst of stock changes makes
+ * the catalog reload once instead of once per change. Notifications raised inside a batch are held
+ * until the batch ends, and are sent straight away if it commits.
+ */
+class NotificationCoalescer {
+
+    /** Default length of the window over which changes are gathered, in milliseconds. */
+    static final long DEFAULT_WINDOW_MILLIS = 100;
+
+    /** Content resolver the notifications are sent through. */
+    private final ContentResolver mResolver;
+
+    /** Handler that sends the gathered notifications at the end of each window. */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Sends the gathered notifications. */
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * URIs that have changed since the last notifications were sent. Guarded by itself.
+     */
+    private final Set<Uri> mChangedUris = new LinkedHashSet<>();
+
+    /**
+     * URIs that have changed during the batch running on the current thread, or null if the
+     * current thread isn't running a batch.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchUris = new ThreadLocal<>();
+
+    /** Number of notifications that have been asked for. */
+    private final AtomicLong mRequestedCount = new AtomicLong();
+
+    /** Number of notifications that have actually been sent. */
+    private final AtomicLong mSentCount = new AtomicLong();
+
+    /** Length of the window over which changes are gathered, in milliseconds. */
+    private volatile long mWindowMillis = DEFAULT_WINDOW_MILLIS;
+
+    /**
+     * Constructs a new {@link NotificationCoalescer}.
+     *
+     * @param resolver Content resolver the notifications are sent through.
+     */
+    NotificationCoalescer(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Set the length of the window over which changes are gathered. With a window of 0, every
+     * notification outside a batch is sent straight away.
+     */
+    void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Notification window can't be negative");
+        }
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Ask for listeners to be notified that the data at the given URI has changed.
+     */
+    void notifyChange(Uri uri) {
+        mRequestedCount.incrementAndGet();
+
+        // Inside a batch, hold the URI back until the batch ends.
+        Set<Uri> batchUris = mBatchUris.get();
+        if (batchUris != null) {
+            batchUris.add(uri);
+            return;
+        }
+
+        if (mWindowMillis == 0) {
+            send(uri);
+            return;
+        }
+
+        // Start a new window if this is the first change since the last notifications were sent.
+        boolean startWindow;
+        synchronized (mChangedUris) {
+            startWindow = mChangedUris.isEmpty();
+            mChangedUris.add(uri);
+        }
+        if (startWindow) {
+            mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+        }
+    }
+
+    /**
+     * Start holding back the notifications raised on the current thread, until
+     * {@link #endBatch(boolean)} is called. Return false if the current thread is already running
+     * a batch, in which case the outer batch keeps holding the notifications and this one
+     * mustn't be ended.
+     */
+    boolean beginBatch() {
+        if (mBatchUris.get() != null) {
+            return false;
+        }
+        mBatchUris.set(new LinkedHashSet<Uri>());
+        return true;
+    }
+
+    /**
+     * Stop holding back the notifications raised on the current thread. If the batch committed,
+     * the URIs it changed are sent straight away, along with any others still waiting for their
+     * window to end. Otherwise nothing changed, and the held notifications are dropped.
+     */
+    void endBatch(boolean committed) {
+        Set<Uri> batchUris = mBatchUris.get();
+        mBatchUris.remove();
+        if (!committed || batchUris == null || batchUris.isEmpty()) {
+            return;
+        }
+        synchronized (mChangedUris) {
+            mChangedUris.addAll(batchUris);
+        }
+        flush();
+    }
+
+    /**
+     * Send one notification for each distinct URI that has changed since the last notifications
+     * were sent.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        ArrayList<Uri> changedUris;
+        synchronized (mChangedUris) {
+            changedUris = new ArrayList<>(mChangedUris);
+            mChangedUris.clear();
+        }
+        for (Uri uri : changedUris) {
+            send(uri);
+        }
+    }
+
+    /**
+     * Returns the number of notifications that have been asked for.
+     */
+    long getRequestedCount() {
+        return mRequestedCount.get();
+    }
+
+    /**
+     * Returns the number of notifications that have actually been sent.
+     */
+    long getSentCount() {
+        return mSentCount.get();
+    }
+
+    private void send(Uri uri) {
+        mSentCount.incrementAndGet();
+        mResolver.notifyChange(uri, null);
+    }
+}
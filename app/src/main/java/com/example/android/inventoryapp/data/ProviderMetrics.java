@@ -0,0 +1,237 @@
+package com.example.android.inventoryapp.data;
+
+import android.os.Bundle;
+import android.util.SparseArray;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the calls made to {@link BookProvider}, for each URI pattern and operation, along with
+ * the rows they wrote and a histogram of how long they took. Recording a call takes a few atomic
+ * additions and allocates nothing once the pattern and operation have been seen, so it can stay
+ * switched on in production. The counters are read together into a {@link Bundle} by
+ * {@link #snapshot}. A query is timed until its cursor is returned, which doesn't include
+ * reading the rows out of the database as the caller steps through them.
+ *
+ * The histogram has four buckets for every power of two microseconds, so a percentile read from
+ * it is never more than a quarter too high. Calls taking about two minutes or more all fall
+ * into the last bucket.
+ */
+class ProviderMetrics {
+
+    /** Operations that are counted. */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+    static final int GET_TYPE = 5;
+
+    /** Names of the operations in the snapshot, in the order of the constants above. */
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete", "get_type"
+    };
+
+    /** Name in the snapshot of the URIs that didn't match any pattern. */
+    private static final String UNMATCHED = "unmatched";
+
+    /** Number of buckets for each power of two microseconds, which must be a power of two. */
+    private static final int SUB_BUCKETS = 4;
+
+    /** Number of bits needed for {@link #SUB_BUCKETS}. */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /** Number of buckets, up to 2^26 µs. The last holds every call from 7 * 2^24 µs on. */
+    private static final int BUCKET_COUNT = 26 * SUB_BUCKETS;
+
+    /** Upper bound of each bucket, in microseconds. */
+    private static final long[] BUCKET_BOUNDS = new long[BUCKET_COUNT];
+
+    static {
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            BUCKET_BOUNDS[i] = lowerBound(i + 1) - 1;
+        }
+        BUCKET_BOUNDS[BUCKET_COUNT - 1] = Long.MAX_VALUE;
+    }
+
+    /**
+     * The counters of one URI pattern and operation.
+     */
+    private static class Series {
+        final AtomicLong mCalls = new AtomicLong();
+        final AtomicLong mFailures = new AtomicLong();
+        final AtomicLong mRows = new AtomicLong();
+        final AtomicLong mTotalMicros = new AtomicLong();
+        final AtomicLong mMaxMicros = new AtomicLong();
+        final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /** URI pattern of each matcher code, in the order of the codes. */
+    private final SparseArray<String> mUriPatterns;
+
+    /**
+     * Counters for each URI pattern and operation, created the first time they are used. The
+     * URIs that didn't match come after the patterns.
+     */
+    private final AtomicReferenceArray<Series> mSeries;
+
+    /**
+     * Constructs a new {@link ProviderMetrics}.
+     *
+     * @param uriPatterns URI pattern of each matcher code the provider uses.
+     */
+    ProviderMetrics(SparseArray<String> uriPatterns) {
+        mUriPatterns = uriPatterns;
+        mSeries = new AtomicReferenceArray<>((uriPatterns.size() + 1) * OPERATION_NAMES.length);
+    }
+
+    /**
+     * Record a call for the given matcher code and operation, started at the given
+     * {@link System#nanoTime()}, which wrote the given number of rows.
+     */
+    void record(int match, int operation, long startNanos, int rows) {
+        Series series = add(match, operation, startNanos);
+        series.mRows.addAndGet(rows);
+    }
+
+    /**
+     * Record a call for the given matcher code and operation, started at the given
+     * {@link System#nanoTime()}, which threw an exception.
+     */
+    void recordFailure(int match, int operation, long startNanos) {
+        Series series = add(match, operation, startNanos);
+        series.mFailures.incrementAndGet();
+    }
+
+    /**
+     * Count a call and its latency, and return the counters it was added to.
+     */
+    private Series add(int match, int operation, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        Series series = getSeries(match, operation);
+        series.mCalls.incrementAndGet();
+        series.mTotalMicros.addAndGet(micros);
+        series.mBuckets.incrementAndGet(bucketFor(micros));
+        long max = series.mMaxMicros.get();
+        while (micros > max && !series.mMaxMicros.compareAndSet(max, micros)) {
+            max = series.mMaxMicros.get();
+        }
+        return series;
+    }
+
+    /**
+     * Returns the counters for the given matcher code and operation, creating them the first
+     * time.
+     */
+    private Series getSeries(int match, int operation) {
+        int pattern = mUriPatterns.indexOfKey(match);
+        if (pattern < 0) {
+            pattern = mUriPatterns.size();
+        }
+        int index = pattern * OPERATION_NAMES.length + operation;
+        Series series = mSeries.get(index);
+        if (series == null) {
+            mSeries.compareAndSet(index, null, new Series());
+            series = mSeries.get(index);
+        }
+        return series;
+    }
+
+    /**
+     * Returns the counters of every URI pattern and operation that has been used, as described
+     * for {@link BookContract#METHOD_METRICS}. If asked to, the counters are then reset. Calls
+     * ending while the snapshot is read may be counted in some of its values and not others.
+     */
+    Bundle snapshot(boolean reset) {
+        Bundle snapshot = new Bundle();
+        for (int i = 0; i < mSeries.length(); i++) {
+            Series series = reset ? mSeries.getAndSet(i, null) : mSeries.get(i);
+            if (series == null) {
+                continue;
+            }
+            int pattern = i / OPERATION_NAMES.length;
+            String name = (pattern < mUriPatterns.size() ? mUriPatterns.valueAt(pattern)
+                    : UNMATCHED) + " " + OPERATION_NAMES[i % OPERATION_NAMES.length];
+            snapshot.putBundle(name, toBundle(series));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the counters of a single URI pattern and operation.
+     */
+    private static Bundle toBundle(Series series) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long calls = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = series.mBuckets.get(i);
+            calls += buckets[i];
+        }
+        long max = series.mMaxMicros.get();
+
+        Bundle bundle = new Bundle();
+        bundle.putLong(BookContract.KEY_METRIC_CALLS, calls);
+        bundle.putLong(BookContract.KEY_METRIC_FAILURES, series.mFailures.get());
+        bundle.putLong(BookContract.KEY_METRIC_ROWS, series.mRows.get());
+        bundle.putLong(BookContract.KEY_METRIC_TOTAL_MICROS, series.mTotalMicros.get());
+        bundle.putLong(BookContract.KEY_METRIC_MAX_MICROS, max);
+        bundle.putLong(BookContract.KEY_METRIC_P50_MICROS, percentile(buckets, calls, 50, max));
+        bundle.putLong(BookContract.KEY_METRIC_P90_MICROS, percentile(buckets, calls, 90, max));
+        bundle.putLong(BookContract.KEY_METRIC_P99_MICROS, percentile(buckets, calls, 99, max));
+        bundle.putLongArray(BookContract.KEY_METRIC_HISTOGRAM, buckets);
+        bundle.putLongArray(BookContract.KEY_METRIC_HISTOGRAM_BOUNDS, BUCKET_BOUNDS.clone());
+        return bundle;
+    }
+
+    /**
+     * Returns the time within which the given percentage of the calls ended, as the upper bound
+     * of the bucket it falls in, but no more than the slowest call.
+     */
+    private static long percentile(long[] buckets, long calls, int percent, long max) {
+        long rank = (calls * percent + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen != 0) {
+                return Math.min(BUCKET_BOUNDS[i], max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the name of the given operation, as used in the snapshot.
+     */
+    static String getOperationName(int operation) {
+        return OPERATION_NAMES[operation];
+    }
+
+    /**
+     * Returns the bucket for a call that took the given number of microseconds. Up to
+     * {@link #SUB_BUCKETS} µs each bucket is one microsecond wide; above that each power of two
+     * is split into {@link #SUB_BUCKETS} equal buckets.
+     */
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket,
+                BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the smallest number of microseconds that falls in the given bucket.
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
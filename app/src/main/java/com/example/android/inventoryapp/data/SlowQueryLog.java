@@ -0,0 +1,265 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the provider operations that took longer than a threshold, so the selections that make
+ * SQLite scan or sort the whole catalog can be found. Each record holds the URI pattern the
+ * operation matched, its selection and sort order with every literal replaced by "?", the rows
+ * it returned or wrote, how long it took, and the plan SQLite chose for each statement it ran,
+ * from EXPLAIN QUERY PLAN. Selection arguments are never kept. The last {@link #CAPACITY}
+ * records are kept in a ring buffer and read by {@link #dump}.
+ *
+ * The log is off until a threshold is set with {@link #setThresholdMillis}, and while it is off
+ * it costs a thread local read per operation. While it is on, the statements of an operation are
+ * remembered as their cursors are created, which is why the log is the cursor factory of the
+ * database. Writes through a selection add theirs with {@link #addStatement}. Statements are
+ * only explained once an operation has turned out to be slow.
+ */
+class SlowQueryLog implements SQLiteDatabase.CursorFactory {
+
+    /** Tag for the log messages. */
+    private static final String LOG_TAG = SlowQueryLog.class.getSimpleName();
+
+    /** Number of slow operations kept. Older ones are dropped as new ones are recorded. */
+    static final int CAPACITY = 32;
+
+    /** Number of statements of a single operation that are explained. */
+    private static final int MAX_STATEMENTS = 8;
+
+    /** What {@link SQLiteQuery#toString()} puts in front of the SQL of the query. */
+    private static final String QUERY_PREFIX = "SQLiteQuery: ";
+
+    /** Literals in SQL: quoted strings and blobs, and hexadecimal and decimal numbers. */
+    private static final Pattern LITERAL = Pattern.compile(
+            "[xX]?'(?:[^']|'')*'|\\b0[xX][0-9a-fA-F]+\\b|\\b\\d+(?:\\.\\d*)?(?:[eE][-+]?\\d+)?\\b");
+
+    /**
+     * A slow operation.
+     */
+    private static class Record {
+        long mTime;
+        String mUri;
+        String mOperation;
+        String mSelection;
+        String mSortOrder;
+        int mRows;
+        long mMillis;
+        String mPlan;
+    }
+
+    /** URI pattern of each matcher code, in the order of the codes. */
+    private final SparseArray<String> mUriPatterns;
+
+    /** Statements run by the operation in progress on each thread, while the log is on. */
+    private final ThreadLocal<ArrayList<String>> mStatements = new ThreadLocal<>();
+
+    /** Ring buffer of the slow operations, the next one going in at {@link #mNext}. */
+    private final Record[] mRecords = new Record[CAPACITY];
+
+    /** Position in {@link #mRecords} of the next slow operation. */
+    private int mNext;
+
+    /** Number of slow operations in {@link #mRecords}. */
+    private int mCount;
+
+    /** Operations taking at least this long are recorded, or none if it is negative. */
+    private volatile long mThresholdNanos = -1;
+
+    /**
+     * Constructs a new {@link SlowQueryLog}, which is off until a threshold is set.
+     *
+     * @param uriPatterns URI pattern of each matcher code the provider uses.
+     */
+    SlowQueryLog(SparseArray<String> uriPatterns) {
+        mUriPatterns = uriPatterns;
+    }
+
+    /**
+     * Record the operations taking at least the given number of milliseconds from now on, or
+     * switch the log off if it is negative. The records kept so far are left as they are.
+     */
+    void setThresholdMillis(long millis) {
+        mThresholdNanos = millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Returns whether operations are being timed against the threshold.
+     */
+    boolean isEnabled() {
+        return mThresholdNanos >= 0;
+    }
+
+    /**
+     * Start remembering the statements of an operation on this thread, if the log is on.
+     */
+    void begin() {
+        if (isEnabled()) {
+            mStatements.set(new ArrayList<String>(2));
+        }
+    }
+
+    /**
+     * Remember the given statement as one run by the operation in progress on this thread.
+     */
+    void addStatement(String sql) {
+        ArrayList<String> statements = mStatements.get();
+        if (statements != null && statements.size() < MAX_STATEMENTS) {
+            statements.add(sql);
+        }
+    }
+
+    /**
+     * Remembers the SQL of every query run while an operation is in progress, and creates the
+     * cursor the database would have created without a factory.
+     */
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                           SQLiteQuery query) {
+        if (mStatements.get() != null) {
+            String sql = query.toString();
+            addStatement(sql.startsWith(QUERY_PREFIX) ? sql.substring(QUERY_PREFIX.length())
+                    : sql);
+        }
+        return new SQLiteCursor(masterQuery, editTable, query);
+    }
+
+    /**
+     * End the operation in progress on this thread, which matched the given code and started at
+     * the given {@link System#nanoTime()}. If it took at least the threshold, explain the
+     * statements it ran and record it, with the given number of rows, or -1 if it failed.
+     */
+    void end(BookDbHelper dbHelper, int match, int operation, Uri uri, String selection,
+             String sortOrder, long startNanos, int rows) {
+        ArrayList<String> statements = mStatements.get();
+        if (statements == null) {
+            return;
+        }
+        mStatements.remove();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long thresholdNanos = mThresholdNanos;
+        if (thresholdNanos < 0 || elapsedNanos < thresholdNanos) {
+            return;
+        }
+
+        Record record = new Record();
+        record.mTime = System.currentTimeMillis();
+        record.mUri = redactUri(match, uri);
+        record.mOperation = ProviderMetrics.getOperationName(operation);
+        record.mSelection = redact(selection);
+        record.mSortOrder = redact(sortOrder);
+        record.mRows = rows;
+        record.mMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        record.mPlan = explain(dbHelper.getReadableDatabase(), statements);
+        synchronized (this) {
+            mRecords[mNext] = record;
+            mNext = (mNext + 1) % CAPACITY;
+            mCount = Math.min(mCount + 1, CAPACITY);
+        }
+        Log.w(LOG_TAG, "Slow " + record.mOperation + " of " + record.mUri + " took "
+                + record.mMillis + " ms for " + rows + " rows, where " + record.mSelection
+                + ", order by " + record.mSortOrder + "\n" + record.mPlan);
+    }
+
+    /**
+     * Returns the slow operations recorded, as described for
+     * {@link BookContract#METHOD_SLOW_QUERIES}, and forget them if asked to.
+     */
+    synchronized Bundle dump(boolean clear) {
+        ArrayList<Bundle> records = new ArrayList<>(mCount);
+        for (int i = 0; i < mCount; i++) {
+            Record record = mRecords[(mNext - mCount + i + CAPACITY) % CAPACITY];
+            Bundle bundle = new Bundle();
+            bundle.putLong(BookContract.KEY_SLOW_QUERY_TIME, record.mTime);
+            bundle.putString(BookContract.KEY_SLOW_QUERY_URI, record.mUri);
+            bundle.putString(BookContract.KEY_SLOW_QUERY_OPERATION, record.mOperation);
+            bundle.putString(BookContract.KEY_SLOW_QUERY_SELECTION, record.mSelection);
+            bundle.putString(BookContract.KEY_SLOW_QUERY_SORT_ORDER, record.mSortOrder);
+            bundle.putInt(BookContract.KEY_SLOW_QUERY_ROWS, record.mRows);
+            bundle.putLong(BookContract.KEY_SLOW_QUERY_MILLIS, record.mMillis);
+            bundle.putString(BookContract.KEY_SLOW_QUERY_PLAN, record.mPlan);
+            records.add(bundle);
+        }
+        if (clear) {
+            for (int i = 0; i < CAPACITY; i++) {
+                mRecords[i] = null;
+            }
+            mCount = 0;
+        }
+
+        Bundle result = new Bundle();
+        result.putParcelableArrayList(BookContract.KEY_SLOW_QUERIES, records);
+        return result;
+    }
+
+    /**
+     * Returns each of the given statements followed by the steps of its plan, one to a line.
+     */
+    private static String explain(SQLiteDatabase database, ArrayList<String> statements) {
+        if (statements.isEmpty()) {
+            return "";
+        }
+        StringBuilder plan = new StringBuilder();
+        for (String sql : statements) {
+            if (plan.length() != 0) {
+                plan.append('\n');
+            }
+            plan.append(redact(sql));
+            try {
+                // The arguments are left unbound. They don't change the plan, and aren't kept.
+                Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+                try {
+                    // The step is in the last column, whatever the version of SQLite.
+                    int detail = cursor.getColumnCount() - 1;
+                    while (cursor.moveToNext()) {
+                        plan.append("\n  ").append(cursor.getString(detail));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } catch (SQLException e) {
+                plan.append("\n  (cannot explain: ").append(e.getMessage()).append(')');
+            }
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Returns the URI pattern the given code stands for, followed by the names of the query
+     * parameters of the URI, without the IDs, search words or keys it holds.
+     */
+    private String redactUri(int match, Uri uri) {
+        String pattern = mUriPatterns.get(match);
+        StringBuilder redacted = new StringBuilder(pattern != null ? pattern : "unmatched");
+        char separator = '?';
+        for (String name : uri.getQueryParameterNames()) {
+            redacted.append(separator).append(name).append("=?");
+            separator = '&';
+        }
+        return redacted.toString();
+    }
+
+    /**
+     * Returns the given SQL with every literal in it replaced by "?", or null if there is none.
+     */
+    static String redact(String sql) {
+        if (TextUtils.isEmpty(sql)) {
+            return null;
+        }
+        return LITERAL.matcher(sql).replaceAll("?");
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.AsyncTask;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Folds stock movements into the stock snapshot of their books. The current stock of a book is
+ * its snapshot plus the movements made since, so compaction keeps the number of movements read
+ * for each book small without changing its stock. The movements themselves are kept as the stock
+ * history; only the snapshot moves on past them.
+ *
+ * Compaction runs in the background once enough movements have been appended since the last one.
+ */
+class StockCompactor {
+
+    /** Number of movements appended before a background compaction is started. */
+    static final int COMPACTION_THRESHOLD = 256;
+
+    /**
+     * SQL statement used to fold the movements up to a given movement ID (?1) into the snapshot
+     * of every book that has any. Only the books with movements after the last compaction (?2)
+     * are looked at, so a compaction costs the same however many books there are.
+     */
+    private static final String SQL_COMPACT = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " = " + BookEntry.COLUMN_PRODUCT_QUANTITY
+            + " + (SELECT IFNULL(SUM(" + StockMovementEntry.COLUMN_DELTA + "), 0)"
+            + tailCondition() + "), "
+            + BookDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + " = ?1"
+            + " WHERE " + BookEntry._ID + " IN (SELECT DISTINCT "
+            + StockMovementEntry.COLUMN_BOOK_ID + " FROM " + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry._ID + " > ?2 AND " + StockMovementEntry._ID
+            + " <= ?1)";
+
+    /** Database helper of the books and their movements. */
+    private final BookDbHelper mDbHelper;
+
+    /** Number of movements appended since the last compaction started. */
+    private final AtomicInteger mPendingMovements = new AtomicInteger();
+
+    /** Whether a background compaction has been started and hasn't finished yet. */
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    /**
+     * ID of the last movement folded in by a compaction, so every movement up to it is in the
+     * snapshots already, or -1 until it has been read from the books.
+     */
+    private volatile long mCompactedMovementId = -1;
+
+    /** Runs a compaction, and lets the next one be scheduled once it has finished. */
+    private final Runnable mCompaction = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compact();
+            } finally {
+                mScheduled.set(false);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link StockCompactor}.
+     *
+     * @param dbHelper Database helper of the books and their movements.
+     */
+    StockCompactor(BookDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Record that the given number of movements have been appended, and start a background
+     * compaction if there are now enough of them.
+     */
+    void onMovementsAppended(int count) {
+        if (mPendingMovements.addAndGet(count) >= COMPACTION_THRESHOLD
+                && mScheduled.compareAndSet(false, true)) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(mCompaction);
+        }
+    }
+
+    /**
+     * Fold every movement appended so far into the snapshot of its book. Return the number of
+     * books whose snapshot moved on.
+     */
+    int compact() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        mPendingMovements.set(0);
+        database.beginTransactionNonExclusive();
+        SQLiteStatement statement = database.compileStatement(SQL_COMPACT);
+        long lastMovementId;
+        int booksCompacted;
+        try {
+            // Movements appended once this transaction has the database are left for next time.
+            lastMovementId = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MAX("
+                    + StockMovementEntry._ID + "), 0) FROM " + StockMovementEntry.TABLE_NAME,
+                    null);
+            // Every compaction moves the snapshots it touches on to the same movement, so the
+            // latest snapshot is where the last one stopped.
+            long compactedMovementId = mCompactedMovementId;
+            if (compactedMovementId == -1) {
+                compactedMovementId = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MAX("
+                        + BookDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + "), 0) FROM "
+                        + BookEntry.TABLE_NAME, null);
+            }
+            statement.bindLong(1, lastMovementId);
+            statement.bindLong(2, compactedMovementId);
+            booksCompacted = statement.executeUpdateDelete();
+            database.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            database.endTransaction();
+        }
+        // Only move on once the snapshots have been committed.
+        mCompactedMovementId = lastMovementId;
+        return booksCompacted;
+    }
+
+    /**
+     * Forget where the last compaction stopped, as the database has been replaced, such as by a
+     * restore. The next compaction reads it from the books again.
+     */
+    void reset() {
+        mCompactedMovementId = -1;
+    }
+
+    /**
+     * Returns the FROM and WHERE clauses selecting the movements of a book after its snapshot, up
+     * to the movement ID ?1.
+     */
+    private static String tailCondition() {
+        String movementId = StockMovementEntry.TABLE_NAME + "." + StockMovementEntry._ID;
+        return " FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.TABLE_NAME + "."
+                + StockMovementEntry.COLUMN_BOOK_ID + " = " + BookEntry.TABLE_NAME + "."
+                + BookEntry._ID
+                + " AND " + movementId + " > " + BookEntry.TABLE_NAME + "."
+                + BookDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID
+                + " AND " + movementId + " <= ?1";
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.android.inventoryapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ChangedBooks}.
+ */
+public class ChangedBooksTest {
+
+    @Test
+    public void onPageLoaded_keepsBooksAskedForAfterThePageStartedLoading() {
+        ChangedBooks changedBooks = new ChangedBooks();
+        BookListItem beforeSale = new BookListItem(1, "Mort", 1, 599, 5);
+        BookListItem afterSale = new BookListItem(1, "Mort", 1, 599, 4);
+        List<BookListItem> page = Arrays.asList(beforeSale);
+
+        // The page starts loading, then the book is sold and fetched again before the page
+        // arrives, still holding the book as it was before the sale.
+        changedBooks.put(1, afterSale, 20);
+        changedBooks.onPageLoaded(page, 10);
+        assertTrue(changedBooks.contains(1));
+        assertEquals(afterSale, changedBooks.get(1));
+
+        // A page that started loading after the book was asked for has it as it is now.
+        changedBooks.onPageLoaded(page, 30);
+        assertFalse(changedBooks.contains(1));
+    }
+
+    @Test
+    public void put_ignoresBooksAskedForBeforeTheOneRemembered() {
+        ChangedBooks changedBooks = new ChangedBooks();
+        BookListItem older = new BookListItem(1, "Mort", 1, 599, 5);
+        changedBooks.put(1, null, 20);
+        changedBooks.put(1, older, 10);
+        assertTrue(changedBooks.contains(1));
+        assertNull(changedBooks.get(1));
+
+        changedBooks.clear();
+        assertFalse(changedBooks.contains(1));
+    }
+}
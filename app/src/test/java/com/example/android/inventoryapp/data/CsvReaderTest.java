@@ -0,0 +1,34 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CsvReader}.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readRecord_splitsQuotedFieldsAndLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\uFEFFname,price\r\n"
+                + "\"Good Omens, \"\"Nice\"\"\",8.99\r\n"
+                + "\r\n"
+                + "Mort,\"two\nlines\"\r"
+                + "Eric,\n"
+                + "Sourcery"));
+        try {
+            assertArrayEquals(new String[]{"name", "price"}, reader.readRecord());
+            assertArrayEquals(new String[]{"Good Omens, \"Nice\"", "8.99"}, reader.readRecord());
+            assertArrayEquals(new String[]{"Mort", "two\nlines"}, reader.readRecord());
+            assertArrayEquals(new String[]{"Eric", ""}, reader.readRecord());
+            assertArrayEquals(new String[]{"Sourcery"}, reader.readRecord());
+            assertNull(reader.readRecord());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package android.annotation;
+
+/**
+ * Stand-in for the Android annotation of the same name, so the app's data layer compiles on a
+ * plain JVM for the benchmarks.
+ */
+public @interface TargetApi {
+    int value();
+}
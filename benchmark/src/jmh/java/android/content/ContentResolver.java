@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * Stand-in for the Android class of the same name, holding the constants the contract uses.
+ */
+public class ContentResolver {
+    public static final String CURSOR_DIR_BASE_TYPE = "vnd.android.cursor.dir";
+    public static final String CURSOR_ITEM_BASE_TYPE = "vnd.android.cursor.item";
+}
@@ -0,0 +1,13 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Stand-in for the Android class of the same name.
+ */
+public class ContentUris {
+
+    public static Uri withAppendedId(Uri contentUri, long id) {
+        return Uri.withAppendedPath(contentUri, String.valueOf(id));
+    }
+}
@@ -0,0 +1,82 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Stand-in for the Android class of the same name, converting values the same way it does.
+ */
+public final class ContentValues {
+
+    private final HashMap<String, Object> mValues;
+
+    public ContentValues() {
+        mValues = new HashMap<>();
+    }
+
+    public ContentValues(ContentValues from) {
+        mValues = new HashMap<>(from.mValues);
+    }
+
+    public void put(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        mValues.put(key, value);
+    }
+
+    public boolean containsKey(String key) {
+        return mValues.containsKey(key);
+    }
+
+    public void remove(String key) {
+        mValues.remove(key);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public Set<String> keySet() {
+        return mValues.keySet();
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public String getAsString(String key) {
+        Object value = mValues.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    public Long getAsLong(String key) {
+        Object value = mValues.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value != null ? Long.valueOf(value.toString()) : null;
+    }
+
+    public Integer getAsInteger(String key) {
+        Long value = getAsLong(key);
+        return value != null ? value.intValue() : null;
+    }
+
+    public Double getAsDouble(String key) {
+        Object value = mValues.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value != null ? Double.valueOf(value.toString()) : null;
+    }
+}
@@ -0,0 +1,20 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android class of the same name. It only knows the directory the databases
+ * are kept in.
+ */
+public class Context {
+
+    private final File mDatabaseDir;
+
+    public Context(File databaseDir) {
+        mDatabaseDir = databaseDir;
+    }
+
+    public File getDatabasePath(String name) {
+        return new File(mDatabaseDir, name);
+    }
+}
@@ -0,0 +1,25 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Stand-in for the part of the Android interface of the same name that the benchmarks read rows
+ * with.
+ */
+public interface Cursor extends Closeable {
+
+    boolean moveToNext();
+
+    int getColumnIndexOrThrow(String columnName);
+
+    long getLong(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    String getString(int columnIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,11 @@
+package android.database;
+
+/**
+ * Stand-in for the Android class of the same name, thrown for any JDBC error.
+ */
+public class SQLException extends RuntimeException {
+
+    public SQLException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
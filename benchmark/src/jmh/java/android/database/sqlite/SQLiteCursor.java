@@ -0,0 +1,87 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Stand-in for the Android class of the same name, reading the rows of a JDBC result set. Android
+ * copies the rows into a cursor window first, while this steps through the statement, so the
+ * cost of reading the rows out of SQLite is the same but the copy isn't included.
+ */
+class SQLiteCursor implements Cursor {
+
+    private final PreparedStatement mStatement;
+    private final ResultSet mResult;
+
+    SQLiteCursor(PreparedStatement statement, ResultSet result) {
+        mStatement = statement;
+        mResult = result;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        try {
+            return mResult.next();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot read row", e);
+        }
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        try {
+            return mResult.findColumn(columnName) - 1;
+        } catch (java.sql.SQLException e) {
+            throw new IllegalArgumentException("No column " + columnName, e);
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        try {
+            return mResult.getLong(columnIndex + 1);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot read column " + columnIndex, e);
+        }
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        try {
+            return mResult.getInt(columnIndex + 1);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot read column " + columnIndex, e);
+        }
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        try {
+            return mResult.getDouble(columnIndex + 1);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot read column " + columnIndex, e);
+        }
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        try {
+            return mResult.getString(columnIndex + 1);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot read column " + columnIndex, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mResult.close();
+            mStatement.close();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot close cursor", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+
+/**
+ * Stand-in for the Android class of the same name, running the same SQL through the SQLite JDBC
+ * driver on a single connection. Transactions nest the way they do on Android: the outermost
+ * transaction commits only if every transaction inside it was marked successful.
+ */
+public class SQLiteDatabase {
+
+    /** Stand-in for the Android interface of the same name, which is never used here. */
+    public interface CursorFactory {
+    }
+
+    /** Connection to the database file. */
+    private final Connection mConnection;
+
+    /** Path of the database file. */
+    private final String mPath;
+
+    /** Whether each open transaction has been marked successful, innermost first. */
+    private final ArrayDeque<Boolean> mTransactions = new ArrayDeque<>();
+
+    /** Whether a transaction inside the outermost one ended without being marked successful. */
+    private boolean mTransactionFailed;
+
+    private SQLiteDatabase(String path) throws java.sql.SQLException {
+        mPath = path;
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + path);
+    }
+
+    /**
+     * Open the database in the given file, creating it if it doesn't exist.
+     */
+    public static SQLiteDatabase openDatabase(String path) {
+        try {
+            return new SQLiteDatabase(path);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot open " + path, e);
+        }
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Switch on write-ahead logging with the checkpoint and journal size settings Android uses by
+     * default.
+     */
+    public boolean enableWriteAheadLogging() {
+        execSQL("PRAGMA journal_mode = WAL;");
+        execSQL("PRAGMA wal_autocheckpoint = 100;");
+        execSQL("PRAGMA journal_size_limit = 524288;");
+        return true;
+    }
+
+    public int getVersion() {
+        Cursor cursor = rawQuery("PRAGMA user_version;", null);
+        try {
+            return cursor.moveToNext() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version + ";");
+    }
+
+    public void execSQL(String sql) {
+        try {
+            Statement statement = mConnection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        try {
+            return new SQLiteStatement(mConnection, sql);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    /**
+     * Run the given query, binding the selection arguments as strings like Android does.
+     */
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try {
+            PreparedStatement statement = mConnection.prepareStatement(sql);
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.setString(i + 1, selectionArgs[i]);
+                }
+            }
+            return new SQLiteCursor(statement, statement.executeQuery());
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    /**
+     * Build a query the way SQLiteQueryBuilder does, and run it.
+     */
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (columns == null) {
+            sql.append('*');
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            }
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sql, " WHERE ", whereClause);
+        SQLiteStatement statement = compileStatement(sql.toString());
+        try {
+            if (whereArgs != null) {
+                for (int i = 0; i < whereArgs.length; i++) {
+                    statement.bindString(i + 1, whereArgs[i]);
+                }
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public void beginTransaction() {
+        beginTransactionNonExclusive();
+    }
+
+    /**
+     * Begin a transaction that takes the write lock straight away, as Android's non-exclusive
+     * transactions do in WAL mode.
+     */
+    public void beginTransactionNonExclusive() {
+        if (mTransactions.isEmpty()) {
+            execSQL("BEGIN IMMEDIATE;");
+            mTransactionFailed = false;
+        }
+        mTransactions.push(false);
+    }
+
+    public void setTransactionSuccessful() {
+        mTransactions.pop();
+        mTransactions.push(true);
+    }
+
+    public void endTransaction() {
+        if (!mTransactions.pop()) {
+            mTransactionFailed = true;
+        }
+        if (mTransactions.isEmpty()) {
+            execSQL(mTransactionFailed ? "ROLLBACK;" : "COMMIT;");
+        }
+    }
+
+    public void close() {
+        try {
+            mConnection.close();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot close " + mPath, e);
+        }
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && !clause.isEmpty()) {
+            sql.append(name).append(clause);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+/**
+ * Stand-in for the Android class of the same name, thrown when a simple query returns no rows.
+ */
+public class SQLiteDoneException extends SQLException {
+
+    public SQLiteDoneException() {
+        super("No rows", null);
+    }
+}
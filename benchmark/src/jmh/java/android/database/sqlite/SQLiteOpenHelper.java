@@ -0,0 +1,84 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the Android class of the same name. It opens the database on first use, calling
+ * back onConfigure, onCreate or onUpgrade, and onOpen in the same order as Android does, so the
+ * app's helper sets the database up exactly as it does on a device.
+ */
+public abstract class SQLiteOpenHelper {
+
+    private final Context mContext;
+    private final String mName;
+    private final int mVersion;
+    private boolean mWriteAheadLoggingEnabled;
+    private SQLiteDatabase mDatabase;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory,
+                            int version) {
+        mContext = context;
+        mName = name;
+        mVersion = version;
+    }
+
+    public synchronized void setWriteAheadLoggingEnabled(boolean enabled) {
+        mWriteAheadLoggingEnabled = enabled;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (mDatabase != null) {
+            return mDatabase;
+        }
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(mName).getPath());
+        try {
+            if (mWriteAheadLoggingEnabled) {
+                db.enableWriteAheadLogging();
+            }
+            onConfigure(db);
+            int version = db.getVersion();
+            if (version != mVersion) {
+                db.beginTransaction();
+                try {
+                    if (version == 0) {
+                        onCreate(db);
+                    } else {
+                        onUpgrade(db, version, mVersion);
+                    }
+                    db.setVersion(mVersion);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            onOpen(db);
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+        mDatabase = db;
+        return db;
+    }
+
+    public synchronized void close() {
+        if (mDatabase != null) {
+            mDatabase.close();
+            mDatabase = null;
+        }
+    }
+
+    public void onConfigure(SQLiteDatabase db) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onOpen(SQLiteDatabase db) {
+    }
+}
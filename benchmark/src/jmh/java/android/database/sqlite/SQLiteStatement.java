@@ -0,0 +1,122 @@
+package android.database.sqlite;
+
+import android.database.SQLException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+/**
+ * Stand-in for the Android class of the same name, backed by a JDBC prepared statement. Like on
+ * Android, a parameter that hasn't been bound is NULL, and bindings stay until they are cleared.
+ */
+public class SQLiteStatement {
+
+    /** Statement run by this one. */
+    private final PreparedStatement mStatement;
+
+    /** Statement reading the ID of the last row inserted on the connection. */
+    private final PreparedStatement mLastInsertRowId;
+
+    /** Number of parameters in the statement. */
+    private final int mParameterCount;
+
+    SQLiteStatement(Connection connection, String sql) throws java.sql.SQLException {
+        mStatement = connection.prepareStatement(sql);
+        mLastInsertRowId = connection.prepareStatement("SELECT last_insert_rowid()");
+        mParameterCount = mStatement.getParameterMetaData().getParameterCount();
+        clearBindings();
+    }
+
+    public void bindString(int index, String value) {
+        try {
+            mStatement.setString(index, value);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot bind " + index, e);
+        }
+    }
+
+    public void bindLong(int index, long value) {
+        try {
+            mStatement.setLong(index, value);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot bind " + index, e);
+        }
+    }
+
+    public void bindDouble(int index, double value) {
+        try {
+            mStatement.setDouble(index, value);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot bind " + index, e);
+        }
+    }
+
+    public void bindNull(int index) {
+        try {
+            mStatement.setNull(index, Types.NULL);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot bind " + index, e);
+        }
+    }
+
+    public void clearBindings() {
+        for (int i = 1; i <= mParameterCount; i++) {
+            bindNull(i);
+        }
+    }
+
+    /**
+     * Run the insert. Return the ID of the new row, or -1 if no row was inserted.
+     */
+    public long executeInsert() {
+        try {
+            if (mStatement.executeUpdate() == 0) {
+                return -1;
+            }
+            ResultSet result = mLastInsertRowId.executeQuery();
+            try {
+                result.next();
+                return result.getLong(1);
+            } finally {
+                result.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot insert", e);
+        }
+    }
+
+    public int executeUpdateDelete() {
+        try {
+            return mStatement.executeUpdate();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot update", e);
+        }
+    }
+
+    public long simpleQueryForLong() {
+        try {
+            ResultSet result = mStatement.executeQuery();
+            try {
+                if (!result.next()) {
+                    throw new SQLiteDoneException();
+                }
+                return result.getLong(1);
+            } finally {
+                result.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot query", e);
+        }
+    }
+
+    public void close() {
+        try {
+            mStatement.close();
+            mLastInsertRowId.close();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("Cannot close", e);
+        }
+    }
+}
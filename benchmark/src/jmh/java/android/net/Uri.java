@@ -0,0 +1,56 @@
+package android.net;
+
+/**
+ * Stand-in for the Android class of the same name. The benchmarks don't go through the content
+ * resolver, so a URI is only ever built, never parsed.
+ */
+public class Uri {
+
+    private final String mUri;
+
+    private Uri(String uri) {
+        mUri = uri;
+    }
+
+    public static Uri parse(String uri) {
+        return new Uri(uri);
+    }
+
+    public static Uri withAppendedPath(Uri baseUri, String pathSegment) {
+        return new Uri(baseUri.mUri + "/" + pathSegment);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(mUri);
+    }
+
+    @Override
+    public String toString() {
+        return mUri;
+    }
+
+    public static class Builder {
+
+        private final StringBuilder mUri;
+        private boolean mHasQuery;
+
+        Builder(String uri) {
+            mUri = new StringBuilder(uri);
+        }
+
+        public Builder appendPath(String segment) {
+            mUri.append('/').append(segment);
+            return this;
+        }
+
+        public Builder appendQueryParameter(String key, String value) {
+            mUri.append(mHasQuery ? '&' : '?').append(key).append('=').append(value);
+            mHasQuery = true;
+            return this;
+        }
+
+        public Uri build() {
+            return new Uri(mUri.toString());
+        }
+    }
+}
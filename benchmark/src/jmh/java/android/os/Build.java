@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class of the same name. The benchmarks run the data layer as it runs
+ * on the app's target version, so write-ahead logging is switched on the same way.
+ */
+public class Build {
+
+    public static class VERSION {
+        public static final int SDK_INT = 27;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN = 16;
+    }
+}
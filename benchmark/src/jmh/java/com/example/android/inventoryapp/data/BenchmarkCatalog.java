@@ -0,0 +1,237 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * A book store database for the benchmarks, set up by {@link BookDbHelper} in a directory of its
+ * own and filled with a given number of books. Books are written through {@link BookStatements}
+ * in the same steps as {@link BookProvider} takes, less the change notifications and the row
+ * cache, which aren't part of what is being measured.
+ */
+class BenchmarkCatalog {
+
+    /** Columns read for each book, the same as {@link BookRowCache} reads on a miss. */
+    static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_GENRE,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE,
+            BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+    };
+
+    /** Number of books inserted in each transaction while the catalog is filled. */
+    private static final int FILL_BATCH_SIZE = 10000;
+
+    /** Number of different suppliers the books are spread over. */
+    private static final int SUPPLIER_COUNT = 100;
+
+    /** Number of genres the books are spread over, starting at {@link BookEntry#GENRE_UNKNOWN}. */
+    private static final int GENRE_COUNT = 8;
+
+    /** Name of the copy of the filled database that {@link #restore()} goes back to. */
+    private static final String TEMPLATE_NAME = "template.db";
+
+    /** Directory the database is kept in. */
+    private final File mDirectory;
+
+    /** Number of books the catalog was filled with. */
+    private final int mSize;
+
+    /** Helper the database is opened with, as in the app. */
+    private final BookDbHelper mDbHelper;
+
+    /** Source of the books picked by {@link #randomBookId()}, the same for every run. */
+    private final Random mRandom = new Random(42);
+
+    private BenchmarkCatalog(File directory, int size) {
+        mDirectory = directory;
+        mSize = size;
+        mDbHelper = new BookDbHelper(new Context(directory));
+    }
+
+    /**
+     * Returns a new catalog in a temporary directory, filled with the given number of books.
+     */
+    static BenchmarkCatalog create(int size) throws IOException {
+        BenchmarkCatalog catalog = new BenchmarkCatalog(
+                Files.createTempDirectory("books").toFile(), size);
+        ContentValues[] books = new ContentValues[Math.min(size, FILL_BATCH_SIZE)];
+        for (int start = 0; start < size; start += books.length) {
+            int count = Math.min(books.length, size - start);
+            if (count != books.length) {
+                books = new ContentValues[count];
+            }
+            createBooks(books, start);
+            catalog.bulkInsert(books);
+        }
+        return catalog;
+    }
+
+    /**
+     * Fill the given array with valid books, numbered from the given number on.
+     */
+    static void createBooks(ContentValues[] books, int start) {
+        for (int i = 0; i < books.length; i++) {
+            int number = start + i;
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + number);
+            values.put(BookEntry.COLUMN_PRODUCT_GENRE, number % GENRE_COUNT);
+            BookEntry.putPrice(values, 599 + number % 20 * 100);
+            values.put(BookEntry.COLUMN_PRODUCT_QUANTITY, number % 50);
+            values.put(BookEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, 5);
+            int supplier = number % SUPPLIER_COUNT;
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Supplier " + supplier);
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE, "0208" + (100000 + supplier));
+            books[i] = values;
+        }
+    }
+
+    /**
+     * Returns the number of books the catalog was filled with. Their IDs run from 1 to this.
+     */
+    int getSize() {
+        return mSize;
+    }
+
+    BookDbHelper getDbHelper() {
+        return mDbHelper;
+    }
+
+    SQLiteDatabase getDatabase() {
+        return mDbHelper.getWritableDatabase();
+    }
+
+    /**
+     * Returns the ID of one of the books the catalog was filled with, picked at random.
+     */
+    long randomBookId() {
+        return 1 + mRandom.nextInt(mSize);
+    }
+
+    /**
+     * Returns a number picked at random from 0 up to, but not including, the given bound.
+     */
+    int randomInt(int bound) {
+        return mRandom.nextInt(bound);
+    }
+
+    /**
+     * Insert a single book in a transaction of its own, as {@link BookProvider#insert} does.
+     * Return the ID of the new book, or -1 if it couldn't be inserted.
+     */
+    long insertBook(ContentValues values) {
+        SQLiteDatabase database = getDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            long id = mDbHelper.getStatements().insertBook(toBookValues(values));
+            database.setTransactionSuccessful();
+            return id;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Insert the given books in one transaction, as {@link BookProvider#bulkInsert} does. Return
+     * the number of books inserted.
+     */
+    int bulkInsert(ContentValues[] values) {
+        SQLiteDatabase database = getDatabase();
+        BookStatements statements = mDbHelper.getStatements();
+        int rowsInserted = 0;
+        database.beginTransactionNonExclusive();
+        try {
+            for (ContentValues bookValues : values) {
+                if (statements.insertBook(toBookValues(bookValues)) != -1) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Returns the given book values with the supplier swapped for its ID, adding the supplier if
+     * there isn't one yet, in the same way as the provider.
+     */
+    private ContentValues toBookValues(ContentValues values) {
+        String name = values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        String phone = values.getAsString(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+        ContentValues bookValues = new ContentValues(values);
+        bookValues.remove(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        bookValues.remove(BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE);
+
+        BookStatements statements = mDbHelper.getStatements();
+        long supplierId = statements.querySupplierId(name);
+        if (supplierId == -1) {
+            supplierId = statements.insertSupplier(name, phone);
+        } else {
+            statements.setSupplierPhone(supplierId, phone);
+        }
+        bookValues.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_ID, supplierId);
+        return bookValues;
+    }
+
+    /**
+     * Delete the books added since the catalog was filled, so it is back to its size.
+     */
+    void trim() {
+        getDatabase().delete(BookEntry.TABLE_NAME, BookEntry._ID + " > ?",
+                new String[] {String.valueOf(mSize)});
+    }
+
+    /**
+     * Keep a copy of the database as it is now, for {@link #restore()} to go back to.
+     */
+    void saveTemplate() throws IOException {
+        File databaseFile = getDatabaseFile();
+        mDbHelper.close();
+        Files.copy(databaseFile.toPath(), new File(mDirectory, TEMPLATE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Put back the copy of the database kept by {@link #saveTemplate()}.
+     */
+    void restore() throws IOException {
+        File databaseFile = getDatabaseFile();
+        mDbHelper.close();
+        Files.copy(new File(mDirectory, TEMPLATE_NAME).toPath(), databaseFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Close the database and delete its directory.
+     */
+    void delete() {
+        mDbHelper.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private File getDatabaseFile() {
+        return new File(getDatabase().getPath());
+    }
+}
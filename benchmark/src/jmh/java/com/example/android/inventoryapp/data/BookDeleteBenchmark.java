@@ -0,0 +1,62 @@
+package com.example.android.inventoryapp.data;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to delete every book in the catalog, as the catalog's "delete all" does. Each
+ * deletion starts from a copy of the full catalog, which is put back outside the timed part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BookDeleteBenchmark {
+
+    /** Number of books in the catalog. */
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    private BenchmarkCatalog mCatalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mCatalog = BenchmarkCatalog.create(catalogSize);
+        mCatalog.saveTemplate();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() throws IOException {
+        mCatalog.restore();
+        // Open the database again before the clock starts.
+        mCatalog.getDatabase();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCatalog.delete();
+    }
+
+    @Benchmark
+    public int deleteAll() {
+        return mCatalog.getDatabase().delete(BookEntry.TABLE_NAME, null, null);
+    }
+}
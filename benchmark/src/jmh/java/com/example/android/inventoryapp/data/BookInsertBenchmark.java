@@ -0,0 +1,79 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to insert a book, one at a time and in bulk. Both are scored per book, so the two
+ * can be compared directly. The books inserted are deleted after each iteration, so the catalog
+ * stays at its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BookInsertBenchmark {
+
+    /** Number of books inserted by each bulk insert. */
+    private static final int BULK_SIZE = 1000;
+
+    /** Number of books in the catalog before any are inserted. */
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    private BenchmarkCatalog mCatalog;
+
+    /** The books inserted, one at a time or all at once. */
+    private final ContentValues[] mBooks = new ContentValues[BULK_SIZE];
+
+    /** Position in {@link #mBooks} of the next book inserted on its own. */
+    private int mNextBook;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mCatalog = BenchmarkCatalog.create(catalogSize);
+        BenchmarkCatalog.createBooks(mBooks, catalogSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void trim() {
+        mCatalog.trim();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCatalog.delete();
+    }
+
+    @Benchmark
+    public long insertSingle() {
+        long id = mCatalog.insertBook(mBooks[mNextBook]);
+        mNextBook = (mNextBook + 1) % BULK_SIZE;
+        return id;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public int insertBulk() {
+        return mCatalog.bulkInsert(mBooks);
+    }
+}
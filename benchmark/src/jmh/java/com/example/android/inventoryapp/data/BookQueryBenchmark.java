@@ -0,0 +1,94 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.BookContract.BookEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to read a single book by its ID, as the provider does when the book isn't in its
+ * row cache, and to read every book in the catalog in ID order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BookQueryBenchmark {
+
+    /** Number of books in the catalog. */
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    private BenchmarkCatalog mCatalog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mCatalog = BenchmarkCatalog.create(catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCatalog.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void queryById(Blackhole blackhole) {
+        Cursor cursor = mCatalog.getDatabase().query(BookDbHelper.VIEW_BOOKS,
+                BenchmarkCatalog.COLUMNS, BookEntry._ID + "=?",
+                new String[] {String.valueOf(mCatalog.randomBookId())}, null, null, null);
+        try {
+            readRows(cursor, blackhole);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void scanCatalog(Blackhole blackhole) {
+        Cursor cursor = mCatalog.getDatabase().query(BookDbHelper.VIEW_BOOKS,
+                BenchmarkCatalog.COLUMNS, null, null, null, null, BookEntry._ID);
+        try {
+            readRows(cursor, blackhole);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read every column of every row left in the cursor, as the provider does when it copies the
+     * rows into a cursor window.
+     */
+    private static void readRows(Cursor cursor, Blackhole blackhole) {
+        while (cursor.moveToNext()) {
+            blackhole.consume(cursor.getLong(0));
+            blackhole.consume(cursor.getString(1));
+            blackhole.consume(cursor.getInt(2));
+            blackhole.consume(cursor.getLong(3));
+            blackhole.consume(cursor.getInt(4));
+            blackhole.consume(cursor.getLong(5));
+            blackhole.consume(cursor.getString(6));
+            blackhole.consume(cursor.getString(7));
+            blackhole.consume(cursor.getInt(8));
+        }
+    }
+}
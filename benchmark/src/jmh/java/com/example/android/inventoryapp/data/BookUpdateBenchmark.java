@@ -0,0 +1,65 @@
+package com.example.android.inventoryapp.data;
+
+import com.example.android.inventoryapp.data.BookContract.StockMovementEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to set the stock quantity of a book, as the editor does, including the share of
+ * the compaction each update sets off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BookUpdateBenchmark {
+
+    /** Largest quantity a book is given, plus one. */
+    private static final int QUANTITY_BOUND = 100;
+
+    /** Number of books in the catalog. */
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    private BenchmarkCatalog mCatalog;
+
+    /** Compacts the stock movements appended by the updates, as in the provider. */
+    private StockCompactor mCompactor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mCatalog = BenchmarkCatalog.create(catalogSize);
+        mCompactor = new StockCompactor(mCatalog.getDbHelper());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCatalog.delete();
+    }
+
+    @Benchmark
+    public int updateQuantity() {
+        int rowsUpdated = mCatalog.getDbHelper().getStatements().setQuantity(
+                mCatalog.randomBookId(), mCatalog.randomInt(QUANTITY_BOUND),
+                StockMovementEntry.REASON_ADJUSTMENT);
+        mCompactor.onMovementsAppended(rowsUpdated);
+        return rowsUpdated;
+    }
+}